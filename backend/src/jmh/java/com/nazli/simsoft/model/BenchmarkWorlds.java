@@ -0,0 +1,29 @@
+package com.nazli.simsoft.model;
+
+import com.nazli.simsoft.util.Constants;
+import com.nazli.simsoft.util.SeededRandom;
+
+/**
+ * Builds reproducible stores for the benchmarks.
+ */
+public final class BenchmarkWorlds {
+
+    // Largest panel PanelConfigService accepts
+    public static final double PANEL_SIZE = 2000;
+
+    private BenchmarkWorlds() {
+    }
+
+    public static ShapeStore populate(ShapeStore store, int count, SeededRandom random) {
+        for (int i = 0; i < count; i++) {
+            double size = Constants.MIN_SIZE + random.nextDouble() * (Constants.MAX_SIZE - Constants.MIN_SIZE);
+            store.add(i, (byte) (i % 3), random.nextDouble() * PANEL_SIZE, random.nextDouble() * PANEL_SIZE,
+                    size, (byte) random.nextInt(Constants.SHAPE_COLORS.length));
+        }
+        int moving = (int) (count * Constants.MOVING_PERCENTAGE);
+        for (int i = 0; i < moving; i++) {
+            store.startMoving(random.nextInt(count), Constants.MAX_VELOCITY, random);
+        }
+        return store;
+    }
+}
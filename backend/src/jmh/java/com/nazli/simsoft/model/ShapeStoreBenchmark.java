@@ -0,0 +1,35 @@
+package com.nazli.simsoft.model;
+
+import com.nazli.simsoft.util.Constants;
+import com.nazli.simsoft.util.SeededRandom;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integration of every body for one step, the successor of the per-object Shape.updatePosition loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShapeStoreBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int shapeCount;
+
+    private ShapeStore store;
+
+    @Setup
+    public void setup() {
+        store = BenchmarkWorlds.populate(new ShapeStore(), shapeCount, new SeededRandom(42));
+    }
+
+    @Benchmark
+    public ShapeStore integrate() {
+        store.integrate(Constants.DELTA_TIME, BenchmarkWorlds.PANEL_SIZE, BenchmarkWorlds.PANEL_SIZE);
+        return store;
+    }
+}
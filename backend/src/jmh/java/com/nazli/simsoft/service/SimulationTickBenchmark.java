@@ -0,0 +1,91 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.broadcast.EncodedFrame;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.model.Shape;
+import com.nazli.simsoft.util.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tick hot path without a messaging template: a full simulation step, the step plus its
+ * broadcast frame, the broadcast frame alone, the moving-set rotation and JSON serialization
+ * of the broadcast list. Run with {@code -prof gc} (the benchmark profile does) to see
+ * allocation per operation next to the timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulationTickBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int shapeCount;
+
+    // Collisions at 1M shapes on a 2000x2000 panel are dominated by crowding, so they are opt-in: -p collisions=true
+    @Param({"false"})
+    public boolean collisions;
+
+    // Keyframe + delta broadcasts: -p delta=true
+    @Param({"false"})
+    public boolean delta;
+
+    private SimulationWorld world;
+    private ObjectMapper objectMapper;
+    private List<Shape> broadcastList;
+
+    @Setup
+    public void setup() {
+        SimulationSettings settings = new SimulationSettings();
+        settings.setCollisionsEnabled(collisions);
+        settings.setDeltaBroadcasts(delta);
+        settings.setKeyframeInterval(60);
+        settings.setSeed(42);
+
+        PanelConfigService panelConfig = new PanelConfigService();
+        panelConfig.setPanelSize(2000, 2000);
+
+        objectMapper = new ObjectMapper();
+        world = new SimulationWorld(panelConfig, objectMapper, settings, null);
+
+        // Thirds of each type, like a client asking for equal counts
+        int perType = shapeCount / 3;
+        world.initializeShapes(perType, perType, shapeCount - 2 * perType);
+        broadcastList = world.getCurrentShapes();
+    }
+
+    @Benchmark
+    public SimulationWorld updateSimulation() {
+        world.updateSimulation(Constants.DELTA_TIME);
+        return world;
+    }
+
+    // The steady-state step as the loop runs it: one tick, then the broadcast frame
+    @Benchmark
+    public EncodedFrame tickAndEncode() {
+        world.updateSimulation(Constants.DELTA_TIME);
+        return world.encodeBroadcast();
+    }
+
+    // Encoding alone, at full detail; without a tick in between, deltas come out empty
+    @Benchmark
+    public EncodedFrame encodeBroadcast() {
+        return world.encodeBroadcast();
+    }
+
+    @Benchmark
+    public SimulationWorld rotateMovingShapes() {
+        world.rotateMovingShapes();
+        return world;
+    }
+
+    @Benchmark
+    public byte[] serializeBroadcast() throws Exception {
+        return objectMapper.writeValueAsBytes(broadcastList);
+    }
+}
@@ -0,0 +1,189 @@
+package com.nazli.simsoft.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One simulated client: a STOMP 1.2 session over a plain WebSocket, subscribed to the shape
+ * topic. Only the headers of each frame are looked at, and the body is skipped as it streams
+ * in, so a load generator with thousands of sessions stays cheap next to the server it measures.
+ */
+final class LoadSession implements WebSocket.Listener {
+
+    static final String FRAME_TIME_HEADER = "\nframe-time:";
+    private static final int MAX_HEADER_CHARS = 4096;
+
+    /**
+     * Counters shared by every session of a run.
+     */
+    static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        // State frames carrying the server's encode time, i.e. broadcasts
+        final LongAdder frames = new LongAdder();
+        // Frames without it, such as /app/getShapes replies
+        final LongAdder replies = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder closed = new LongAdder();
+
+        void reset() {
+            latency.reset();
+            frames.reset();
+            replies.reset();
+        }
+    }
+
+    private final Stats stats;
+    private final String topic;
+    private final CountDownLatch subscribed = new CountDownLatch(1);
+    private volatile WebSocket webSocket;
+    private volatile boolean open;
+    private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+    // Receive state; the listener is never called concurrently for one session
+    private final StringBuilder header = new StringBuilder();
+    private boolean inMessage;
+    private boolean headerDone;
+    private long receivedAt;
+
+    LoadSession(Stats stats, String topic) {
+        this.stats = stats;
+        this.topic = topic;
+    }
+
+    CompletableFuture<WebSocket> connect(HttpClient client, URI uri) {
+        return client.newWebSocketBuilder().buildAsync(uri, this);
+    }
+
+    boolean awaitSubscribed(long timeout, TimeUnit unit) throws InterruptedException {
+        return subscribed.await(timeout, unit);
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    void send(String destination, String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        sendFrame("SEND\ndestination:" + destination + "\ncontent-type:application/json\ncontent-length:"
+                + body.length + "\n\n" + json + "\u0000");
+    }
+
+    void close() {
+        WebSocket socket = webSocket;
+        if (socket != null && open) {
+            sendFrame("DISCONNECT\n\n\u0000");
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+        }
+    }
+
+    // The JDK client allows one outstanding send per socket, so sends are chained
+    private synchronized void sendFrame(String frame) {
+        WebSocket socket = webSocket;
+        lastSend = lastSend.thenCompose(ignored -> socket.sendText(frame, true));
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        open = true;
+        sendFrame("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\n\n\u0000");
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        receive(data, last);
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        receive(StandardCharsets.ISO_8859_1.decode(data), last);
+        webSocket.request(1);
+        return null;
+    }
+
+    private void receive(CharSequence data, boolean last) {
+        if (!inMessage) {
+            inMessage = true;
+            headerDone = false;
+            header.setLength(0);
+            receivedAt = nowMicros();
+        }
+        if (!headerDone) {
+            header.append(data, 0, Math.min(data.length(), MAX_HEADER_CHARS - header.length()));
+            int end = header.indexOf("\n\n");
+            if (end >= 0) {
+                headerDone = true;
+                onFrame(end);
+            } else if (header.length() >= MAX_HEADER_CHARS) {
+                headerDone = true;
+            }
+        }
+        if (last) {
+            inMessage = false;
+        }
+    }
+
+    private void onFrame(int headerEnd) {
+        int commandEnd = header.indexOf("\n");
+        String command = header.substring(header.charAt(0) == '\n' ? 1 : 0, commandEnd > 0 ? commandEnd : headerEnd);
+        switch (command) {
+            case "CONNECTED":
+                sendFrame("SUBSCRIBE\nid:0\ndestination:" + topic + "\n\n\u0000");
+                // /app/getShapes replies go to the asking session only
+                sendFrame("SUBSCRIBE\nid:1\ndestination:/user/queue/shapes\n\n\u0000");
+                subscribed.countDown();
+                break;
+            case "MESSAGE":
+                int at = header.indexOf(FRAME_TIME_HEADER);
+                if (at >= 0 && at < headerEnd) {
+                    int start = at + FRAME_TIME_HEADER.length();
+                    int end = header.indexOf("\n", start);
+                    stats.latency.record(receivedAt - Long.parseLong(header.substring(start, end)));
+                    stats.frames.increment();
+                } else {
+                    stats.replies.increment();
+                }
+                break;
+            case "ERROR":
+                stats.errors.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        if (open) {
+            open = false;
+            stats.closed.increment();
+        }
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.errors.increment();
+        if (open) {
+            open = false;
+            stats.closed.increment();
+        }
+    }
+
+    static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+}
@@ -0,0 +1,71 @@
+package com.nazli.simsoft.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Reads the server's meters from {@code /actuator/metrics}. Anything unavailable reads as NaN,
+ * so a server without Actuator exposure still gets a client-side report.
+ */
+final class ServerMetrics {
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    ServerMetrics(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * One statistic of a meter, such as {@code COUNT} or {@code VALUE}.
+     */
+    double read(String meter, String statistic) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + meter))
+                    .timeout(Duration.ofSeconds(2))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) return Double.NaN;
+            for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+                if (statistic.equals(measurement.path("statistic").asText())) {
+                    return measurement.path("value").asDouble();
+                }
+            }
+            return Double.NaN;
+        } catch (IOException e) {
+            return Double.NaN;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * The counters a stage is measured by, read together.
+     */
+    Sample sample() {
+        Sample sample = new Sample();
+        sample.broadcasts = read("simulation.broadcasts", "COUNT");
+        sample.dropped = read("websocket.frames.dropped", "COUNT");
+        sample.ticks = read("simulation.tick", "COUNT");
+        sample.tickTime = read("simulation.tick", "TOTAL_TIME");
+        sample.overruns = read("simulation.ticks.overrun", "COUNT");
+        return sample;
+    }
+
+    static final class Sample {
+        double broadcasts;
+        double dropped;
+        double ticks;
+        double tickTime;
+        double overruns;
+    }
+}
@@ -0,0 +1,222 @@
+package com.nazli.simsoft.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Opens ever more STOMP sessions against a running server and reports, per stage, how the
+ * broadcast holds up: end-to-end frame latency (the server's encode time in the
+ * {@code frame-time} header to client receipt), frames missed against the server's broadcast
+ * count, frames the server dropped for slow sessions, server CPU and tick time.
+ *
+ * Options are {@code name=value} arguments:
+ * <pre>
+ * url=http://localhost:8080     server to load
+ * sessions=100,500,1000         session count per stage; stages add sessions, they never reconnect
+ * duration=30                   seconds measured per stage
+ * ramp=200                      new sessions per second
+ * init=1000,1000,1000           circles, rectangles, triangles sent once before the first stage
+ * get-shapes-interval=0         seconds between /app/getShapes from every session, 0 for none
+ * topic=/topic/shapes           destination to subscribe to
+ * </pre>
+ *
+ * Client and server share the clock, so run both on one machine; the client's own CPU is
+ * reported so a saturated load generator is not mistaken for a slow server.
+ */
+public final class StompLoadTest {
+
+    private static final long SETTLE_MILLIS = 2000;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    private final Map<String, String> options;
+    private final LoadSession.Stats stats = new LoadSession.Stats();
+    private final List<LoadSession> sessions = new ArrayList<>();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder pending = new LongAdder();
+    private volatile boolean running = true;
+
+    private StompLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                System.err.println("Options are name=value, see StompLoadTest's javadoc; got " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new StompLoadTest(options).run();
+        System.exit(0);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private void run() throws Exception {
+        String url = option("url", "http://localhost:8080");
+        URI endpoint = URI.create(url.replaceFirst("^http", "ws") + "/ws/shapes/websocket");
+        int duration = Integer.parseInt(option("duration", "30"));
+        int ramp = Integer.parseInt(option("ramp", "200"));
+        String init = option("init", "");
+        int getShapesInterval = Integer.parseInt(option("get-shapes-interval", "0"));
+        String topic = option("topic", "/topic/shapes");
+
+        ExecutorService executor = virtualThreadExecutor();
+        System.out.println(executor != null ? "Sessions run on virtual threads"
+                : "Virtual threads need Java 21+; sessions run on platform threads");
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        // Each client reads all its sockets on one selector thread, so spread sessions over several
+        HttpClient[] clients = new HttpClient[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = HttpClient.newBuilder().executor(executor).build();
+        }
+        ServerMetrics server = new ServerMetrics(url);
+
+        System.out.printf("%8s %7s %6s %9s %7s %8s %8s %8s %8s %9s %15s %8s %8s %10s%n",
+                "sessions", "open", "failed", "frames/s", "missed", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+                "dropped", "server cpu", "tick ms", "overruns", "client cpu");
+
+        boolean initialized = init.isEmpty();
+        for (String stage : option("sessions", "100").split(",")) {
+            int target = Integer.parseInt(stage.trim());
+            long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, ramp);
+            long next = System.nanoTime();
+            while (sessions.size() < target) {
+                LoadSession session = new LoadSession(stats, topic);
+                sessions.add(session);
+                String command = initialized ? null : init;
+                initialized = true;
+                pending.increment();
+                HttpClient client = clients[sessions.size() % clients.length];
+                executor.execute(() -> drive(session, client, endpoint, command, getShapesInterval));
+                next += interval;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+            // Every session has subscribed or given up before anything is measured
+            while (pending.sum() > 0) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(SETTLE_MILLIS);
+            measure(server, target, duration);
+        }
+
+        running = false;
+        sessions.forEach(LoadSession::close);
+        Thread.sleep(500);
+        executor.shutdownNow();
+    }
+
+    // Runs on its own (virtual) thread: connect, subscribe, then send commands until the run ends
+    private void drive(LoadSession session, HttpClient client, URI endpoint, String init, int getShapesInterval) {
+        boolean subscribed = false;
+        try {
+            session.connect(client, endpoint).get(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            subscribed = session.awaitSubscribed(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Counted below
+        } finally {
+            if (!subscribed) failed.incrementAndGet();
+            pending.decrement();
+        }
+        if (!subscribed) return;
+
+        if (init != null) {
+            String[] counts = init.split(",");
+            session.send("/app/initializeShapes", String.format("{\"circles\":%s,\"rectangles\":%s,\"triangles\":%s}",
+                    counts[0].trim(), counts[1].trim(), counts[2].trim()));
+        }
+        if (getShapesInterval <= 0) return;
+        try {
+            while (running && session.isOpen()) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(getShapesInterval));
+                session.send("/app/getShapes", "{}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void measure(ServerMetrics server, int target, int duration) throws InterruptedException {
+        int open = (int) sessions.stream().filter(LoadSession::isOpen).count();
+        long closedBefore = stats.closed.sum();
+        stats.reset();
+        ServerMetrics.Sample before = server.sample();
+        double cpuTotal = 0;
+        double cpuMax = 0;
+        double clientCpu = 0;
+        int cpuSamples = 0;
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+        while (System.nanoTime() < end) {
+            Thread.sleep(1000);
+            double cpu = server.read("process.cpu.usage", "VALUE");
+            if (!Double.isNaN(cpu)) {
+                cpuTotal += cpu;
+                cpuMax = Math.max(cpuMax, cpu);
+                cpuSamples++;
+            }
+            clientCpu = Math.max(clientCpu, processCpuLoad());
+        }
+        ServerMetrics.Sample after = server.sample();
+
+        long frames = stats.frames.sum();
+        double broadcasts = after.broadcasts - before.broadcasts;
+        // Sessions that closed during the stage count as missing every frame after they left
+        double expected = broadcasts * open;
+        double missed = expected > 0 ? Math.max(0, 1 - frames / expected) : Double.NaN;
+        double ticks = after.ticks - before.ticks;
+        double tickMillis = ticks > 0 ? (after.tickTime - before.tickTime) / ticks * 1000 : Double.NaN;
+        String serverCpu = cpuSamples > 0
+                ? String.format("%.0f%% / %.0f%%", cpuTotal / cpuSamples * 100, cpuMax * 100) : "n/a";
+
+        System.out.printf("%8d %7d %6d %9.0f %6.2f%% %8.1f %8.1f %8.1f %8.1f %9.0f %15s %8.3f %8.0f %9.0f%%%n",
+                target, open, failed.get(), frames / (double) duration, missed * 100,
+                stats.latency.percentile(0.5) / 1000.0, stats.latency.percentile(0.99) / 1000.0,
+                stats.latency.percentile(0.999) / 1000.0, stats.latency.max() / 1000.0,
+                after.dropped - before.dropped, serverCpu, tickMillis, after.overruns - before.overruns,
+                clientCpu * 100);
+        long closed = stats.closed.sum() - closedBefore;
+        if (closed > 0 || stats.errors.sum() > 0 || stats.replies.sum() > 0) {
+            System.out.printf("         %d sessions closed, %d errors so far, %d replies%n",
+                    closed, stats.errors.sum(), stats.replies.sum());
+        }
+    }
+
+    private static double processCpuLoad() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return Math.max(0, os.getProcessCpuLoad());
+        }
+        return 0;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() when running on Java 21+, which the build does not require
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.model.ShapeStore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Packs the whole world into one compact big-endian frame.
+ *
+ * <pre>
+ * header (16 bytes): uint32 sequence, uint16 panelWidth, uint16 panelHeight,
+ *                    uint32 count, uint16 recordSize, uint16 version
+ * record (14 bytes): int32 id, uint8 type (bit 7 = moving), uint8 palette index,
+ *                    uint16 x, uint16 y, uint16 angle, uint16 size
+ * </pre>
+ *
+ * The panel size is rounded to whole units and capped at 65535, and x and y are scaled to
+ * the size as sent, so decoding with the header gives them back. Angle is scaled to a full
+ * turn, and size is 8.8 fixed point. All uint16 fields are unsigned; read them as such.
+ */
+public class BinaryFrameEncoder {
+
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 14;
+    public static final int VERSION = 1;
+
+    private static final int MOVING_FLAG = 0x80;
+    private static final double QUANT_MAX = 65535.0;
+    private static final double TWO_PI = Math.PI * 2;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + RECORD_BYTES * 64);
+
+    /**
+     * Encodes into the reusable buffer and returns a copy of exactly the written bytes;
+     * the copy is what gets handed to the broker, the buffer itself is never shared.
+     */
+    public byte[] encode(ShapeStore store, long sequence, double panelWidth, double panelHeight) {
+        int count = store.size();
+        int frameBytes = HEADER_BYTES + RECORD_BYTES * count;
+        if (buffer.capacity() < frameBytes) {
+            buffer = ByteBuffer.allocate(Math.max(frameBytes, buffer.capacity() * 2));
+        }
+        buffer.clear();
+
+        short width = quantize(panelWidth);
+        short height = quantize(panelHeight);
+        buffer.putInt((int) sequence);
+        buffer.putShort(width);
+        buffer.putShort(height);
+        buffer.putInt(count);
+        buffer.putShort((short) RECORD_BYTES);
+        buffer.putShort((short) VERSION);
+
+        int[] ids = store.getIds();
+        byte[] types = store.getTypes();
+        byte[] colors = store.getColors();
+        double[] x = store.getX();
+        double[] y = store.getY();
+        double[] angle = store.getAngle();
+        double[] size = store.getSize();
+        boolean[] moving = store.getMoving();
+        double scaleX = QUANT_MAX / Math.max(1, Short.toUnsignedInt(width));
+        double scaleY = QUANT_MAX / Math.max(1, Short.toUnsignedInt(height));
+
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(ids[i]);
+            buffer.put((byte) (moving[i] ? types[i] | MOVING_FLAG : types[i]));
+            buffer.put(colors[i]);
+            buffer.putShort(quantize(x[i] * scaleX));
+            buffer.putShort(quantize(y[i] * scaleY));
+            buffer.putShort(quantize(normalizeAngle(angle[i]) * (QUANT_MAX / TWO_PI)));
+            buffer.putShort(quantize(size[i] * 256));
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static short quantize(double value) {
+        if (value <= 0) return 0;
+        if (value >= QUANT_MAX) return (short) 0xFFFF;
+        return (short) Math.round(value);
+    }
+
+    private static double normalizeAngle(double angle) {
+        double wrapped = angle % TWO_PI;
+        return wrapped < 0 ? wrapped + TWO_PI : wrapped;
+    }
+}
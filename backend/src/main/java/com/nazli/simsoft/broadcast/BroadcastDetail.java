@@ -0,0 +1,67 @@
+package com.nazli.simsoft.broadcast;
+
+/**
+ * How much of the world a broadcast carries: how often it goes out, how finely JSON frames
+ * write positions and angles, and how often deltas update small moving shapes. Physics never
+ * looks at it, so a degraded broadcast leaves the simulation and its replay log untouched.
+ */
+public final class BroadcastDetail {
+
+    public static final BroadcastDetail FULL = new BroadcastDetail(1, 0, 0, 0, 1);
+
+    private final int rateDivisor;
+    private final double positionScale;
+    private final double angleScale;
+    private final double smallSize;
+    private final int smallInterval;
+
+    /**
+     * @param rateDivisor   broadcast on every n-th network slot
+     * @param positionScale positions and velocities are rounded to 1/scale units, 0 for exact
+     * @param angleScale    angles and angular velocities are rounded to 1/scale radians, 0 for exact
+     * @param smallSize     moving shapes smaller than this are updated less often in deltas
+     * @param smallInterval ...on every n-th delta only
+     */
+    public BroadcastDetail(int rateDivisor, double positionScale, double angleScale, double smallSize, int smallInterval) {
+        if (rateDivisor < 1 || smallInterval < 1) {
+            throw new IllegalArgumentException("Rate divisor and small-shape interval must be at least 1");
+        }
+        this.rateDivisor = rateDivisor;
+        this.positionScale = positionScale;
+        this.angleScale = angleScale;
+        this.smallSize = smallSize;
+        this.smallInterval = smallInterval;
+    }
+
+    public double position(double value) {
+        return positionScale > 0 ? Math.rint(value * positionScale) / positionScale : value;
+    }
+
+    public double angle(double value) {
+        return angleScale > 0 ? Math.rint(value * angleScale) / angleScale : value;
+    }
+
+    public boolean isQuantized() {
+        return positionScale > 0 || angleScale > 0;
+    }
+
+    /**
+     * Whether a delta with this sequence number leaves out the moving shape at {@code index}.
+     * Shapes take turns by index, so each delta carries an even share of them.
+     */
+    public boolean skips(long sequence, int index, double size) {
+        return smallInterval > 1 && size < smallSize && (sequence + index) % smallInterval != 0;
+    }
+
+    public int getRateDivisor() {
+        return rateDivisor;
+    }
+
+    public double getSmallSize() {
+        return smallSize;
+    }
+
+    public int getSmallInterval() {
+        return smallInterval;
+    }
+}
@@ -0,0 +1,340 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.dto.StateFrame;
+import com.nazli.simsoft.model.Shape;
+import com.nazli.simsoft.model.ShapeStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns successive {@link ShapeStore} states into keyframes and deltas. It remembers the
+ * values it last sent for every shape, so a delta contains only what clients don't have yet.
+ * Sleeping bodies never change, so a delta only looks at the moving bodies and at those that
+ * fell asleep since the last frame; a sleeper is sent once, at rest, and then left out.
+ *
+ * Shapes added or removed between ticks are reported through {@link #added} and
+ * {@link #removed} and go out with the next delta, so changing a few shapes of a large
+ * world costs a few entries rather than a keyframe.
+ */
+public class DeltaEncoder {
+
+    private final int keyframeInterval;
+
+    private long sequence;
+    private int framesSinceKeyframe;
+    private boolean dirty = true;
+
+    // Last values sent, indexed like the store; sentCount also counts shapes not sent yet
+    private int sentCount;
+    private double[] sentX = new double[0];
+    private double[] sentY = new double[0];
+    private double[] sentVelocityX = new double[0];
+    private double[] sentVelocityY = new double[0];
+    private double[] sentAngle = new double[0];
+    private double[] sentAngularVelocity = new double[0];
+    private boolean[] sentMoving = new boolean[0];
+
+    // Bodies that were moving in the last frame sent, and each body's slot in it (-1 if not)
+    private int sentActiveCount;
+    private int[] sentActive = new int[0];
+    private int[] sentActiveSlot = new int[0];
+
+    // Bodies added since the last frame, and each body's slot in that list (-1 if not listed)
+    private int addedCount;
+    private int[] added = new int[0];
+    private int[] addedSlot = new int[0];
+    // Ids removed since the last frame that clients know about
+    private final List<String> removed = new ArrayList<>();
+
+    public DeltaEncoder(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Marks the world as changed outside the tick (initialize, reset, ...), so the next frame
+     * must be a keyframe with a new sequence number.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * A body was appended to the store at {@code index}; the next delta carries it whole.
+     */
+    public void added(int index) {
+        if (dirty) return;
+        ensureCapacity(index + 1);
+        addedSlot[index] = addedCount;
+        added[addedCount++] = index;
+        sentCount++;
+    }
+
+    /**
+     * The body {@code id} at {@code index} was removed and the one at {@code last} moved into
+     * its place, see {@link ShapeStore#remove}. The next delta lists the id as removed.
+     */
+    public void removed(int index, int last, int id) {
+        if (dirty) return;
+        if (addedSlot[index] >= 0) {
+            // Never sent, so clients need not hear about it
+            unlist(added, addedSlot, index, addedCount--);
+        } else {
+            removed.add(ShapeStore.formatId(id));
+        }
+        if (sentActiveSlot[index] >= 0) {
+            unlist(sentActive, sentActiveSlot, index, sentActiveCount--);
+        }
+        if (index != last) {
+            sentX[index] = sentX[last];
+            sentY[index] = sentY[last];
+            sentVelocityX[index] = sentVelocityX[last];
+            sentVelocityY[index] = sentVelocityY[last];
+            sentAngle[index] = sentAngle[last];
+            sentAngularVelocity[index] = sentAngularVelocity[last];
+            sentMoving[index] = sentMoving[last];
+            relist(sentActive, sentActiveSlot, last, index);
+            relist(added, addedSlot, last, index);
+        }
+        sentCount--;
+    }
+
+    // Drops index from a list kept with each entry's slot, moving the list's last entry into its slot
+    private static void unlist(int[] list, int[] slots, int index, int size) {
+        int slot = slots[index];
+        int moved = list[size - 1];
+        list[slot] = moved;
+        slots[moved] = slot;
+        slots[index] = -1;
+    }
+
+    // The entry for a body that moved from one index to another
+    private static void relist(int[] list, int[] slots, int from, int to) {
+        int slot = slots[from];
+        slots[to] = slot;
+        slots[from] = -1;
+        if (slot >= 0) {
+            list[slot] = to;
+        }
+    }
+
+    /**
+     * Encodes the frame for one tick: a keyframe when one is due or the world was rebuilt,
+     * otherwise a delta against the previous frame.
+     */
+    public StateFrame encode(ShapeStore store) {
+        return encode(store, BroadcastDetail.FULL);
+    }
+
+    /**
+     * Like {@link #encode(ShapeStore)}, at a lower level of detail: changes are rounded first,
+     * so one smaller than the rounding step is not sent at all, and small moving shapes are
+     * only updated on some deltas. A shape that comes to rest is always sent, so every shape
+     * ends up exactly where the last frame about it says.
+     */
+    public StateFrame encode(ShapeStore store, BroadcastDetail detail) {
+        if (dirty || store.size() != sentCount || ++framesSinceKeyframe >= keyframeInterval) {
+            return nextKeyframe(store);
+        }
+
+        sequence++;
+        List<ShapeDelta> changes = new ArrayList<>();
+        List<Shape> addedShapes = null;
+        if (addedCount > 0) {
+            // Sent whole, so the loops below find nothing new about them
+            addedShapes = new ArrayList<>(addedCount);
+            for (int k = 0; k < addedCount; k++) {
+                int i = added[k];
+                addedShapes.add(store.toShape(i));
+                captureBody(store, i);
+                addedSlot[i] = -1;
+            }
+            addedCount = 0;
+        }
+        List<String> removedIds = null;
+        if (!removed.isEmpty()) {
+            removedIds = new ArrayList<>(removed);
+            removed.clear();
+        }
+
+        // Bodies moving now, then bodies that moved at some point since the last frame and
+        // have stopped again; a body seen twice simply has no changes the second time
+        int[] active = store.getActive();
+        int activeCount = store.getActiveCount();
+        double[] size = store.getSize();
+        for (int k = 0; k < activeCount; k++) {
+            int i = active[k];
+            if (!detail.skips(sequence, i, size[i])) {
+                addChange(changes, store, i, detail);
+            }
+        }
+        boolean[] moving = store.getMoving();
+        for (int k = 0; k < sentActiveCount; k++) {
+            int i = sentActive[k];
+            if (!moving[i]) {
+                addChange(changes, store, i, detail);
+            }
+        }
+        int[] woken = store.getWoken();
+        for (int k = 0, count = store.getWokenCount(); k < count; k++) {
+            if (!moving[woken[k]]) {
+                addChange(changes, store, woken[k], detail);
+            }
+        }
+        captureActive(store);
+        return StateFrame.delta(sequence, changes, addedShapes, removedIds);
+    }
+
+    private void addChange(List<ShapeDelta> changes, ShapeStore store, int i, BroadcastDetail detail) {
+        int[] ids = store.getIds();
+        double[] x = store.getX();
+        double[] y = store.getY();
+        double[] velocityX = store.getVelocityX();
+        double[] velocityY = store.getVelocityY();
+        double[] angle = store.getAngle();
+        double[] angularVelocity = store.getAngularVelocity();
+        boolean[] moving = store.getMoving();
+
+        ShapeDelta delta = null;
+        double value = detail.position(x[i]);
+        if (value != sentX[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setX(value);
+            sentX[i] = value;
+        }
+        value = detail.position(y[i]);
+        if (value != sentY[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setY(value);
+            sentY[i] = value;
+        }
+        value = detail.angle(angle[i]);
+        if (value != sentAngle[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setAngle(value);
+            sentAngle[i] = value;
+        }
+        value = detail.position(velocityX[i]);
+        if (value != sentVelocityX[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setVelocityX(value);
+            sentVelocityX[i] = value;
+        }
+        value = detail.position(velocityY[i]);
+        if (value != sentVelocityY[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setVelocityY(value);
+            sentVelocityY[i] = value;
+        }
+        value = detail.angle(angularVelocity[i]);
+        if (value != sentAngularVelocity[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setAngularVelocity(value);
+            sentAngularVelocity[i] = value;
+        }
+        if (moving[i] != sentMoving[i]) {
+            delta = delta != null ? delta : newDelta(ids[i]);
+            delta.setMoving(moving[i]);
+            sentMoving[i] = moving[i];
+        }
+        if (delta != null) {
+            changes.add(delta);
+        }
+    }
+
+    /**
+     * Full state for a client that asked to resync. Between ticks the store still matches the
+     * last frame sent, so the current sequence number is reused and the delta chain carries on;
+     * only after an out-of-tick change does this start a new chain.
+     */
+    public StateFrame keyframe(ShapeStore store) {
+        if (dirty || store.size() != sentCount || addedCount > 0 || !removed.isEmpty()) {
+            return nextKeyframe(store);
+        }
+        return StateFrame.keyframe(sequence, store.toShapes());
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    private StateFrame nextKeyframe(ShapeStore store) {
+        sequence++;
+        framesSinceKeyframe = 0;
+        dirty = false;
+        capture(store);
+        return StateFrame.keyframe(sequence, store.toShapes());
+    }
+
+    private void capture(ShapeStore store) {
+        int count = store.size();
+        ensureCapacity(count);
+        for (int k = 0; k < addedCount; k++) {
+            addedSlot[added[k]] = -1;
+        }
+        addedCount = 0;
+        removed.clear();
+        System.arraycopy(store.getX(), 0, sentX, 0, count);
+        System.arraycopy(store.getY(), 0, sentY, 0, count);
+        System.arraycopy(store.getVelocityX(), 0, sentVelocityX, 0, count);
+        System.arraycopy(store.getVelocityY(), 0, sentVelocityY, 0, count);
+        System.arraycopy(store.getAngle(), 0, sentAngle, 0, count);
+        System.arraycopy(store.getAngularVelocity(), 0, sentAngularVelocity, 0, count);
+        System.arraycopy(store.getMoving(), 0, sentMoving, 0, count);
+        sentCount = count;
+        captureActive(store);
+    }
+
+    private void captureBody(ShapeStore store, int i) {
+        sentX[i] = store.getX()[i];
+        sentY[i] = store.getY()[i];
+        sentVelocityX[i] = store.getVelocityX()[i];
+        sentVelocityY[i] = store.getVelocityY()[i];
+        sentAngle[i] = store.getAngle()[i];
+        sentAngularVelocity[i] = store.getAngularVelocity()[i];
+        sentMoving[i] = store.getMoving()[i];
+    }
+
+    private void captureActive(ShapeStore store) {
+        int activeCount = store.getActiveCount();
+        if (sentActive.length < activeCount) {
+            sentActive = new int[Math.max(activeCount, sentActive.length * 2)];
+        }
+        for (int k = 0; k < sentActiveCount; k++) {
+            sentActiveSlot[sentActive[k]] = -1;
+        }
+        System.arraycopy(store.getActive(), 0, sentActive, 0, activeCount);
+        for (int k = 0; k < activeCount; k++) {
+            sentActiveSlot[sentActive[k]] = k;
+        }
+        sentActiveCount = activeCount;
+        store.clearWoken();
+    }
+
+    private void ensureCapacity(int count) {
+        if (sentX.length >= count) return;
+        int length = sentX.length;
+        int capacity = Math.max(count, length * 2);
+        sentX = Arrays.copyOf(sentX, capacity);
+        sentY = Arrays.copyOf(sentY, capacity);
+        sentVelocityX = Arrays.copyOf(sentVelocityX, capacity);
+        sentVelocityY = Arrays.copyOf(sentVelocityY, capacity);
+        sentAngle = Arrays.copyOf(sentAngle, capacity);
+        sentAngularVelocity = Arrays.copyOf(sentAngularVelocity, capacity);
+        sentMoving = Arrays.copyOf(sentMoving, capacity);
+        sentActiveSlot = Arrays.copyOf(sentActiveSlot, capacity);
+        Arrays.fill(sentActiveSlot, length, capacity, -1);
+        added = Arrays.copyOf(added, capacity);
+        addedSlot = Arrays.copyOf(addedSlot, capacity);
+        Arrays.fill(addedSlot, length, capacity, -1);
+    }
+
+    private static ShapeDelta newDelta(int id) {
+        return new ShapeDelta(ShapeStore.formatId(id));
+    }
+}
@@ -0,0 +1,42 @@
+package com.nazli.simsoft.broadcast;
+
+import java.time.Instant;
+
+/**
+ * A state frame that has already been serialized. It is encoded once and then handed
+ * unchanged to the broker, to every {@code @MessageMapping} reply and to REST callers,
+ * so the payload array must never be modified after construction.
+ */
+public final class EncodedFrame {
+
+    private final byte[] payload;
+    private final long tick;
+    private final long timestamp;
+
+    public EncodedFrame(byte[] payload, long tick) {
+        this.payload = payload;
+        this.tick = tick;
+        Instant now = Instant.now();
+        this.timestamp = now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * When the frame was encoded, in microseconds since the epoch; broadcasts carry it in the
+     * {@value com.nazli.simsoft.util.Constants#FRAME_TIME_HEADER} header so clients can measure latency.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getLength() {
+        return payload.length;
+    }
+}
@@ -0,0 +1,33 @@
+package com.nazli.simsoft.broadcast;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Writes {@link EncodedFrame} payloads through as-is, so frames returned from
+ * {@code @SendTo} handlers or passed to {@code convertAndSend} skip Jackson.
+ */
+public class EncodedFrameMessageConverter extends AbstractMessageConverter {
+
+    public EncodedFrameMessageConverter() {
+        super(MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EncodedFrame.class.equals(clazz);
+    }
+
+    @Override
+    protected boolean canConvertFrom(Message<?> message, Class<?> targetClass) {
+        // Outbound only
+        return false;
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return ((EncodedFrame) payload).getPayload();
+    }
+}
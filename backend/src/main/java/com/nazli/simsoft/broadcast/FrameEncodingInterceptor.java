@@ -0,0 +1,115 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.util.Constants;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Negotiates the /topic/shapes encoding per subscription. A SUBSCRIBE carrying
+ * {@code content-type: application/vnd.simsoft.shapes} is moved to the binary destination,
+ * and {@code ;encoding=base64} selects the base64 variant for text-only transports such as
+ * SockJS. Also counts subscribers so frames are only encoded when someone listens.
+ */
+@Component
+public class FrameEncodingInterceptor implements ChannelInterceptor {
+
+    private static final String ENCODING_PARAMETER = "encoding";
+    private static final String BASE64 = "base64";
+
+    // sessionId -> subscriptionId -> destination, for binary subscriptions only
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger binarySubscribers = new AtomicInteger();
+    private final AtomicInteger base64Subscribers = new AtomicInteger();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        StompCommand command = accessor.getCommand();
+        if (command == null) {
+            return message;
+        }
+
+        switch (command) {
+            case SUBSCRIBE:
+                return negotiate(message, accessor);
+            case UNSUBSCRIBE:
+                removeSubscription(accessor.getSessionId(), accessor.getSubscriptionId());
+                return message;
+            case DISCONNECT:
+                removeSession(accessor.getSessionId());
+                return message;
+            default:
+                return message;
+        }
+    }
+
+    public boolean hasBinarySubscribers() {
+        return binarySubscribers.get() > 0;
+    }
+
+    public boolean hasBase64Subscribers() {
+        return base64Subscribers.get() > 0;
+    }
+
+    private Message<?> negotiate(Message<?> message, StompHeaderAccessor accessor) {
+        if (!Constants.TOPIC_SHAPES.equals(accessor.getDestination())) {
+            return message;
+        }
+        String contentType = accessor.getFirstNativeHeader(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER);
+        if (contentType == null) {
+            return message;
+        }
+
+        MimeType mimeType;
+        try {
+            mimeType = MimeType.valueOf(contentType);
+        } catch (InvalidMimeTypeException e) {
+            return message;
+        }
+        if (!Constants.BINARY_SHAPES_MIME_TYPE.equals(mimeType.getType() + "/" + mimeType.getSubtype())) {
+            return message;
+        }
+
+        boolean base64 = BASE64.equalsIgnoreCase(mimeType.getParameter(ENCODING_PARAMETER));
+        String destination = base64 ? Constants.TOPIC_SHAPES_BASE64 : Constants.TOPIC_SHAPES_BINARY;
+        subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), destination);
+        counterFor(destination).incrementAndGet();
+
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    private void removeSubscription(String sessionId, String subscriptionId) {
+        Map<String, String> session = sessionId != null ? subscriptions.get(sessionId) : null;
+        if (session == null || subscriptionId == null) {
+            return;
+        }
+        String destination = session.remove(subscriptionId);
+        if (destination != null) {
+            counterFor(destination).decrementAndGet();
+        }
+    }
+
+    private void removeSession(String sessionId) {
+        Map<String, String> session = sessionId != null ? subscriptions.remove(sessionId) : null;
+        if (session != null) {
+            session.values().forEach(destination -> counterFor(destination).decrementAndGet());
+        }
+    }
+
+    private AtomicInteger counterFor(String destination) {
+        return Constants.TOPIC_SHAPES_BASE64.equals(destination) ? base64Subscribers : binarySubscribers;
+    }
+}
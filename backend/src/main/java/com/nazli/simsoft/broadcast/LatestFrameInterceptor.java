@@ -0,0 +1,177 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import com.nazli.simsoft.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest-frame-wins delivery of state frames on the clientOutbound channel. Each subscription
+ * holds at most one pending frame: a newer frame replaces it in place instead of queueing
+ * another task, and a frame that comes up while the session is still writing is dropped
+ * rather than piling up in the session's send buffer. Slow clients simply see a lower frame
+ * rate. Only full-state frames are coalesced; deltas, replies and errors pass through.
+ */
+@Component
+public class LatestFrameInterceptor implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestFrameInterceptor.class);
+
+    @Autowired
+    private SimulationSettings settings;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SessionState state = stateFor(message);
+        if (state == null) {
+            return message;
+        }
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (state.pending.put(subscriptionId, message) != null) {
+            // A task for this subscription is already queued and will pick up this frame
+            state.drop(metrics);
+            return null;
+        }
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        // A frame the executor rejected must not keep its slot, or the subscription would starve
+        if (!sent || ex != null) {
+            SessionState state = stateFor(message);
+            if (state != null) {
+                state.pending.remove(SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()), message);
+            }
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        SessionState state = stateFor(message);
+        if (state == null) {
+            return message;
+        }
+        Message<?> latest = state.pending.remove(SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()));
+        if (latest != null && state.writing.get() > 0) {
+            state.drop(metrics);
+            return null;
+        }
+        return latest;
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionState state = new SessionState();
+                sessions.put(session.getId(), state);
+                super.afterConnectionEstablished(new WritingSession(session, state));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                SessionState state = sessions.remove(session.getId());
+                if (state != null && state.dropped.get() > 0) {
+                    log.debug("Session {} closed after {} dropped frames", session.getId(), state.dropped.get());
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Frames dropped for a session so far, or 0 if the session is unknown.
+     */
+    public long getDroppedFrames(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state != null ? state.dropped.get() : 0;
+    }
+
+    private SessionState stateFor(Message<?> message) {
+        if (!isStateFrame(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+            return null;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        return sessionId != null && subscriptionId != null ? sessions.get(sessionId) : null;
+    }
+
+    // Binary and viewport frames are always complete; JSON ones only when deltas are off
+    private boolean isStateFrame(String destination) {
+        if (destination == null) {
+            return false;
+        }
+        if (Constants.TOPIC_SHAPES_BINARY.equals(destination) || Constants.TOPIC_SHAPES_BASE64.equals(destination)
+                || destination.startsWith(Constants.QUEUE_VIEWPORT + "-user")) {
+            return true;
+        }
+        if (settings.isDeltaBroadcasts()) {
+            return false;
+        }
+        return Constants.TOPIC_SHAPES.equals(destination)
+                || (destination.startsWith(Constants.TOPIC_ROOMS_PREFIX) && destination.endsWith(Constants.ROOM_SHAPES_SUFFIX));
+    }
+
+    private static final class SessionState {
+        // subscriptionId -> newest frame not yet handed to the session
+        final Map<String, Message<?>> pending = new ConcurrentHashMap<>();
+        final AtomicInteger writing = new AtomicInteger();
+        final AtomicLong dropped = new AtomicLong();
+
+        void drop(SimulationMetrics metrics) {
+            dropped.incrementAndGet();
+            metrics.recordDroppedFrame();
+        }
+    }
+
+    /**
+     * Marks the session busy for as long as a write to the client is in progress.
+     */
+    private static final class WritingSession extends WebSocketSessionDecorator {
+
+        private final SessionState state;
+
+        WritingSession(WebSocketSession session, SessionState state) {
+            super(session);
+            this.state = state;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            state.writing.incrementAndGet();
+            try {
+                super.sendMessage(message);
+            } finally {
+                state.writing.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.config.VirtualThreads;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The sessions on the raw WebSocket endpoint and the frames pushed to them. There is no
+ * broker in between: each broadcast hands the same pre-encoded binary frame to every
+ * session, wrapped without copying. Delivery is latest-frame-wins, like
+ * {@link LatestFrameInterceptor}: a session holds at most one pending frame, a newer one
+ * replaces it, and a small sender pool, or virtual threads, write them so a slow client never
+ * blocks the loop.
+ */
+@Component
+public class RawSessionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(RawSessionRegistry.class);
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Value("${simulation.websocket.send-time-limit:10s}")
+    private Duration sendTimeLimit;
+
+    @Value("${simulation.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    // 0 means one thread per core
+    @Value("${simulation.websocket.raw.sender-threads:0}")
+    private int senderThreads;
+
+    @Value("${simulation.websocket.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean virtualThreads;
+
+    private final Map<String, RawSession> sessions = new ConcurrentHashMap<>();
+    // The last frame broadcast while anyone was connected, sent to sessions as they join
+    private volatile byte[] latest;
+    private Executor sender;
+    private ExecutorService senderPool;
+
+    @PostConstruct
+    void init() {
+        if (VirtualThreads.use(virtualThreads, "raw WebSocket sends")) {
+            sender = VirtualThreads.executor("raw-socket-sender-");
+        } else {
+            int threads = senderThreads > 0 ? senderThreads : Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadIndex = new AtomicInteger();
+            senderPool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "raw-socket-sender-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            sender = senderPool;
+        }
+        metrics.bindRawSessions(this);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (senderPool != null) {
+            senderPool.shutdownNow();
+        }
+    }
+
+    public void register(WebSocketSession session) {
+        RawSession raw = new RawSession(new ConcurrentWebSocketSessionDecorator(session,
+                (int) sendTimeLimit.toMillis(), sendBufferSizeLimit));
+        sessions.put(session.getId(), raw);
+        byte[] frame = latest;
+        if (frame != null) {
+            raw.offer(frame);
+        }
+    }
+
+    public void unregister(String sessionId) {
+        RawSession raw = sessions.remove(sessionId);
+        if (raw != null && raw.dropped.get() > 0) {
+            log.debug("Raw session {} closed after {} dropped frames", sessionId, raw.dropped.get());
+        }
+        if (sessions.isEmpty()) {
+            // Frames stop being encoded once nobody listens, so this one would only go stale
+            latest = null;
+        }
+    }
+
+    public boolean hasSessions() {
+        return !sessions.isEmpty();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Queues a frame for every session. The array is shared and must not be modified afterwards.
+     */
+    public void broadcast(byte[] frame) {
+        latest = frame;
+        for (RawSession raw : sessions.values()) {
+            raw.offer(frame);
+        }
+    }
+
+    /**
+     * Queues the last broadcast frame again for one session, for a client that lost track.
+     */
+    public void resend(String sessionId) {
+        RawSession raw = sessions.get(sessionId);
+        byte[] frame = latest;
+        if (raw != null && frame != null) {
+            raw.offer(frame);
+        }
+    }
+
+    private final class RawSession {
+        private final WebSocketSession session;
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+
+        RawSession(WebSocketSession session) {
+            this.session = session;
+        }
+
+        void offer(byte[] frame) {
+            if (pending.getAndSet(frame) != null) {
+                dropped.incrementAndGet();
+                metrics.recordDroppedFrame();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                sender.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                scheduled.set(false);
+            }
+        }
+
+        // One flush per session at a time, so frames reach the client in order
+        private void flush() {
+            try {
+                byte[] frame;
+                while ((frame = pending.getAndSet(null)) != null) {
+                    // A message's buffer is consumed by the write, hence one wrapper per session
+                    session.sendMessage(new BinaryMessage(frame));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Closing raw session {}: {}", session.getId(), e.getMessage());
+                unregister(session.getId());
+                close();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            // A frame offered between the last poll and releasing the flag would otherwise wait
+            if (pending.get() != null) {
+                schedule();
+            }
+        }
+
+        private void close() {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.debug("Failed to close raw session {}", session.getId(), e);
+            }
+        }
+    }
+}
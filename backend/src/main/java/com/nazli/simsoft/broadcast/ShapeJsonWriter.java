@@ -0,0 +1,113 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.model.ShapeStore;
+import com.nazli.simsoft.util.Constants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Streams the store straight to JSON, byte for byte what Jackson writes for a
+ * {@code List<Shape>}, without building the Shape objects or the list. The generator and its
+ * output buffer are reused between frames. What a frame still allocates is the returned copy,
+ * which every recipient shares, and the text of each number, which Jackson formats through a
+ * String. Not thread-safe; each world has its own.
+ */
+public class ShapeJsonWriter {
+
+    private static final char[] ID_PREFIX = "shape_".toCharArray();
+
+    private final JsonFactory factory;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+    private final char[] idChars = new char[ID_PREFIX.length + 11];
+    private JsonGenerator generator;
+
+    public ShapeJsonWriter(JsonFactory factory) {
+        this.factory = factory;
+        System.arraycopy(ID_PREFIX, 0, idChars, 0, ID_PREFIX.length);
+    }
+
+    public byte[] write(ShapeStore store) {
+        return write(store, BroadcastDetail.FULL);
+    }
+
+    /**
+     * Writes positions, velocities and angles rounded as {@code detail} says; rounded values
+     * print with fewer digits, which is most of what a coarse frame saves.
+     */
+    public byte[] write(ShapeStore store, BroadcastDetail detail) {
+        buffer.reset();
+        try {
+            JsonGenerator generator = generator();
+            int[] ids = store.getIds();
+            byte[] types = store.getTypes();
+            byte[] colors = store.getColors();
+            double[] x = store.getX();
+            double[] y = store.getY();
+            double[] velocityX = store.getVelocityX();
+            double[] velocityY = store.getVelocityY();
+            double[] angle = store.getAngle();
+            double[] angularVelocity = store.getAngularVelocity();
+            double[] size = store.getSize();
+            boolean[] moving = store.getMoving();
+
+            generator.writeStartArray();
+            for (int i = 0, count = store.size(); i < count; i++) {
+                generator.writeStartObject();
+                generator.writeFieldName("id");
+                generator.writeString(idChars, 0, formatId(ids[i]));
+                generator.writeStringField("type", ShapeStore.typeName(types[i]));
+                generator.writeNumberField("x", detail.position(x[i]));
+                generator.writeNumberField("y", detail.position(y[i]));
+                generator.writeNumberField("velocityX", detail.position(velocityX[i]));
+                generator.writeNumberField("velocityY", detail.position(velocityY[i]));
+                generator.writeNumberField("angle", detail.angle(angle[i]));
+                generator.writeNumberField("angularVelocity", detail.angle(angularVelocity[i]));
+                generator.writeStringField("color", Constants.SHAPE_COLORS[colors[i]]);
+                generator.writeNumberField("size", size[i]);
+                generator.writeBooleanField("moving", moving[i]);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.flush();
+        } catch (IOException e) {
+            // Its state is unknown now, so the next frame starts over with a new one
+            generator = null;
+            throw new UncheckedIOException("Failed to write shape frame", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private JsonGenerator generator() throws IOException {
+        if (generator == null) {
+            generator = factory.createGenerator(buffer);
+            // One root value per frame, without the separator Jackson puts between root values
+            generator.setRootValueSeparator(null);
+        }
+        return generator;
+    }
+
+    // Same text as ShapeStore.formatId, written into idChars; returns the length
+    private int formatId(int id) {
+        int length = ID_PREFIX.length;
+        if (id < 0) {
+            idChars[length++] = '-';
+            id = -id;
+        }
+        int start = length;
+        do {
+            idChars[length++] = (char) ('0' + id % 10);
+            id /= 10;
+        } while (id > 0);
+        // Digits came out least significant first
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char swap = idChars[i];
+            idChars[i] = idChars[j];
+            idChars[j] = swap;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,38 @@
+package com.nazli.simsoft.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Leaves the data layer out entirely when snapshots are off: no DataSource, connection pool,
+ * Hibernate or repositories are set up, which is most of what a cold start spends outside
+ * the simulation itself. Snapshots are the only thing that uses the database.
+ */
+public class PersistenceEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    private static final String EXCLUDE = "spring.autoconfigure.exclude";
+    private static final String[] DATA_AUTO_CONFIGURATIONS = {
+            "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+            "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration",
+    };
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (environment.getProperty("simulation.persistence.enabled", Boolean.class, false)) return;
+
+        Set<String> excludes = new LinkedHashSet<>(
+                StringUtils.commaDelimitedListToSet(environment.getProperty(EXCLUDE, "")));
+        excludes.addAll(Set.of(DATA_AUTO_CONFIGURATIONS));
+        excludes.remove("");
+        environment.getPropertySources().addFirst(new MapPropertySource("simulationPersistence",
+                Map.of(EXCLUDE, String.join(",", excludes))));
+    }
+}
@@ -0,0 +1,28 @@
+package com.nazli.simsoft.config;
+
+import com.nazli.simsoft.controller.RawSocketHandler;
+import com.nazli.simsoft.util.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Plain WebSocket endpoint next to the SockJS/STOMP one: no fallback transports, no STOMP
+ * framing and no broker, just binary frames in and out. Browsers keep using
+ * {@link WebSocketConfig}.
+ */
+@Configuration
+@EnableWebSocket
+public class RawWebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private RawSocketHandler rawSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(rawSocketHandler, Constants.RAW_WEBSOCKET_ENDPOINT)
+                .setAllowedOriginPatterns("*");
+    }
+}
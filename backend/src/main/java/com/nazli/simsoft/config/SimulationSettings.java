@@ -0,0 +1,61 @@
+package com.nazli.simsoft.config;
+
+import com.nazli.simsoft.util.Constants;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Simulation tuning from application.properties, shared by the default world and by rooms.
+ * Setters exist for code that builds worlds outside Spring, such as the benchmarks.
+ */
+@Getter
+@Setter
+@Component
+public class SimulationSettings {
+
+    @Value("${simulation.physics-rate:" + Constants.UPDATE_RATE + "}")
+    private double physicsRate;
+
+    @Value("${simulation.network-rate:" + Constants.UPDATE_RATE + "}")
+    private double networkRate;
+
+    @Value("${simulation.max-catch-up-steps:5}")
+    private int maxCatchUpSteps;
+
+    @Value("${simulation.collisions.enabled:true}")
+    private boolean collisionsEnabled;
+
+    // Seed for every world's random numbers; 0 picks a fresh one per world, which is then logged
+    @Value("${simulation.seed:0}")
+    private long seed;
+
+    @Value("${simulation.broadcast.delta:false}")
+    private boolean deltaBroadcasts;
+
+    @Value("${simulation.broadcast.keyframe-interval:60}")
+    private int keyframeInterval;
+
+    @Value("${simulation.parallel.enabled:false}")
+    private boolean parallelIntegration;
+
+    // 0 means one worker per available core
+    @Value("${simulation.parallel.threads:0}")
+    private int parallelThreads;
+
+    @Value("${simulation.parallel.threshold:50000}")
+    private int parallelThreshold;
+
+    // World units sent beyond each edge of a viewport, so panning does not reveal gaps
+    @Value("${simulation.viewport.margin:100}")
+    private double viewportMargin;
+
+    // Below this zoom a viewport gets density tiles instead of shapes
+    @Value("${simulation.viewport.density-zoom:0.25}")
+    private double densityZoom;
+
+    // On-screen size of one density tile
+    @Value("${simulation.viewport.tile-pixels:32}")
+    private double densityTilePixels;
+}
@@ -0,0 +1,26 @@
+package com.nazli.simsoft.config;
+
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import com.nazli.simsoft.replay.ReplayService;
+import com.nazli.simsoft.service.RoomService;
+import com.nazli.simsoft.service.SnapshotService;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Beans that must be created at startup even with {@code spring.main.lazy-initialization}
+ * on, as the startup profile has it. Worlds have to be restored and the replay log attached
+ * before the simulation loop starts, and rooms and metrics have to be listening for session
+ * events from the first connection. The loop itself, and everything it uses, is started as
+ * a lifecycle bean anyway.
+ */
+@Configuration(proxyBeanMethods = false)
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter simulationEagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SnapshotService.class, ReplayService.class,
+                RoomService.class, SimulationMetrics.class);
+    }
+}
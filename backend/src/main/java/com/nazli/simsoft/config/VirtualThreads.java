@@ -0,0 +1,49 @@
+package com.nazli.simsoft.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Virtual-thread executors for I/O-bound work: STOMP message handling and per-session sends.
+ * A blocked write then parks a cheap virtual thread instead of holding one of a few pool
+ * threads, so one slow client cannot starve the rest. The build targets Java 17, so support
+ * is checked at runtime.
+ *
+ * CPU-bound work stays on platform threads: the simulation loop, room workers and parallel
+ * integration. The virtual-thread scheduler still gets one carrier per core by default; to keep
+ * a core for the tick, launch with {@code -Djdk.virtualThreadScheduler.parallelism=<cores - 1>}.
+ * The JVM reads it once, when the first virtual thread starts, so it is not set from here.
+ */
+public final class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Whether to use virtual threads when asked for them, warning once per caller if the JVM is too old.
+     */
+    public static boolean use(boolean requested, String purpose) {
+        if (requested && !isSupported()) {
+            log.warn("Virtual threads for {} need Java 21+, running on {}; using platform threads",
+                    purpose, Runtime.version());
+            return false;
+        }
+        return requested;
+    }
+
+    /**
+     * An executor starting one virtual thread per task, named {@code prefix} plus a counter.
+     */
+    public static Executor executor(String prefix) {
+        return new VirtualThreadTaskExecutor(prefix);
+    }
+}
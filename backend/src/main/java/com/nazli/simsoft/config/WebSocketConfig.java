@@ -1,16 +1,65 @@
 package com.nazli.simsoft.config;
 
+import com.nazli.simsoft.broadcast.EncodedFrameMessageConverter;
+import com.nazli.simsoft.broadcast.FrameEncodingInterceptor;
+import com.nazli.simsoft.broadcast.LatestFrameInterceptor;
+import com.nazli.simsoft.metrics.OutboundChannelMetricsInterceptor;
+import com.nazli.simsoft.metrics.SimulationMetrics;
 import com.nazli.simsoft.util.Constants;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.time.Duration;
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private FrameEncodingInterceptor frameEncodingInterceptor;
+
+    @Autowired
+    private LatestFrameInterceptor latestFrameInterceptor;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Value("${simulation.websocket.send-time-limit:10s}")
+    private Duration sendTimeLimit;
+
+    @Value("${simulation.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${simulation.websocket.inbound-threads:0}")
+    private int inboundThreads;
+
+    @Value("${simulation.websocket.outbound-threads:0}")
+    private int outboundThreads;
+
+    @Value("${simulation.websocket.outbound-queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    // Follows Spring Boot's own switch unless set; only takes effect on Java 21+
+    @Value("${simulation.websocket.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean virtualThreadsRequested;
+
+    private boolean virtualThreads;
+
+    @PostConstruct
+    void init() {
+        virtualThreads = VirtualThreads.use(virtualThreadsRequested, "the STOMP channels");
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue");
@@ -23,5 +72,55 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint(Constants.WEBSOCKET_ENDPOINT)
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        // Neither executor keeps one session's commands in order by itself: several pool
+        // threads can already take them out of order, and a virtual thread per message makes
+        // that likely, so with virtual threads they are handed over in receive order
+        registry.setPreserveReceiveOrder(virtualThreads);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(VirtualThreads.executor("ws-inbound-"));
+        } else {
+            int threads = inboundThreads > 0 ? inboundThreads : Runtime.getRuntime().availableProcessors() * 2;
+            registration.taskExecutor()
+                    .corePoolSize(threads)
+                    .maxPoolSize(threads);
+        }
+        registration.interceptors(frameEncodingInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(latestFrameInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            // A write blocked on a slow session parks its own virtual thread and nobody else's;
+            // latest-frame-wins still bounds what each subscription has in flight
+            registration.executor(VirtualThreads.executor("ws-outbound-"));
+        } else {
+            // Fixed-size pool: with at most one state frame pending per subscription the queue
+            // stays short, and the bound only guards against runaway replies
+            int threads = outboundThreads > 0 ? outboundThreads : Runtime.getRuntime().availableProcessors() * 2;
+            registration.taskExecutor()
+                    .corePoolSize(threads)
+                    .maxPoolSize(threads)
+                    .queueCapacity(outboundQueueCapacity);
+        }
+        registration.interceptors(latestFrameInterceptor,
+                new OutboundChannelMetricsInterceptor(metrics.getOutboundTimer(), metrics.getOutboundActive()));
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Pre-encoded frames must win over Jackson, whichever configurer registers it
+        messageConverters.add(0, new EncodedFrameMessageConverter());
+        return true;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.nazli.simsoft.controller;
+
+import com.nazli.simsoft.dto.LoadStatus;
+import com.nazli.simsoft.service.AdaptiveLoadService;
+import com.nazli.simsoft.util.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(Constants.API_BASE_PATH)
+public class LoadController {
+
+    @Autowired
+    private AdaptiveLoadService adaptiveLoadService;
+
+    @GetMapping("/load")
+    public ResponseEntity<LoadStatus> getLoad() {
+        return ResponseEntity.ok(adaptiveLoadService.getStatus());
+    }
+}
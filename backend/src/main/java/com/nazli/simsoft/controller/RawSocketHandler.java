@@ -0,0 +1,131 @@
+package com.nazli.simsoft.controller;
+
+import com.nazli.simsoft.broadcast.RawSessionRegistry;
+import com.nazli.simsoft.replay.Replayer;
+import com.nazli.simsoft.service.PanelConfigService;
+import com.nazli.simsoft.service.PhysicsSimulationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The raw WebSocket endpoint, for native and game clients that want neither SockJS nor
+ * STOMP. The server pushes a binary frame (see {@link com.nazli.simsoft.broadcast.BinaryFrameEncoder})
+ * with every broadcast; the client sends big-endian binary commands, one per message:
+ *
+ * <pre>
+ * 0x01 init      int32 circles, int32 rectangles, int32 triangles
+ *                [float64 panelWidth, float64 panelHeight]
+ * 0x02 reset
+ * 0x03 snapshot  resend the latest frame now
+ * 0x04 panel     float64 width, float64 height
+ * 0x05 add       int32 circles, int32 rectangles, int32 triangles, added to the live world
+ * 0x06 remove    int32 count, then count int32 ids (the numbers in "shape_N")
+ * 0x07 update    int32 count, then per shape int32 id, uint8 fields and a float64 for each
+ *                field bit set, in bit order: 0x01 x, 0x02 y, 0x04 angle, 0x08 velocityX,
+ *                0x10 velocityY, 0x20 angularVelocity; 0x40 sets moving to bit 0x80
+ * </pre>
+ *
+ * Round trips can be measured with WebSocket pings. A malformed command closes the
+ * session; text messages are refused.
+ */
+@Component
+public class RawSocketHandler extends BinaryWebSocketHandler {
+
+    public static final byte INIT = 0x01;
+    public static final byte RESET = 0x02;
+    public static final byte SNAPSHOT = 0x03;
+    public static final byte PANEL = 0x04;
+    public static final byte ADD = 0x05;
+    public static final byte REMOVE = 0x06;
+    public static final byte UPDATE = 0x07;
+
+    @Autowired
+    private RawSessionRegistry sessions;
+
+    @Autowired
+    private PhysicsSimulationService physicsSimulationService;
+
+    @Autowired
+    private PanelConfigService panelConfigService;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        sessions.register(session);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        ByteBuffer command = message.getPayload();
+        try {
+            handleCommand(session, command);
+        } catch (BufferUnderflowException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("Truncated command"));
+        }
+    }
+
+    private void handleCommand(WebSocketSession session, ByteBuffer command) throws Exception {
+        byte opcode = command.get();
+        switch (opcode) {
+            case INIT: {
+                int circles = command.getInt();
+                int rectangles = command.getInt();
+                int triangles = command.getInt();
+                if (command.remaining() >= 16) {
+                    setPanelSize(command.getDouble(), command.getDouble());
+                }
+                physicsSimulationService.initializeShapes(circles, rectangles, triangles);
+                break;
+            }
+            case RESET:
+                physicsSimulationService.resetSimulation();
+                break;
+            case SNAPSHOT:
+                sessions.resend(session.getId());
+                break;
+            case PANEL:
+                setPanelSize(command.getDouble(), command.getDouble());
+                break;
+            case ADD:
+                physicsSimulationService.addShapes(command.getInt(), command.getInt(), command.getInt());
+                break;
+            case REMOVE: {
+                int count = command.getInt();
+                if (count < 0 || count > command.remaining() / 4) {
+                    throw new BufferUnderflowException();
+                }
+                int[] ids = new int[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = command.getInt();
+                }
+                physicsSimulationService.removeShapes(ids);
+                break;
+            }
+            case UPDATE:
+                // Same layout as an update record in the replay log
+                physicsSimulationService.updateShapes(Replayer.readUpdates(command));
+                break;
+            default:
+                session.close(CloseStatus.BAD_DATA.withReason("Unknown command " + opcode));
+        }
+    }
+
+    private void setPanelSize(double width, double height) {
+        try {
+            panelConfigService.setPanelSize(width, height);
+        } catch (IllegalArgumentException e) {
+            // Same as over STOMP: an invalid size leaves the panel as it was
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        sessions.unregister(session.getId());
+    }
+}
@@ -0,0 +1,43 @@
+package com.nazli.simsoft.controller;
+
+import com.nazli.simsoft.dto.ReplayInfo;
+import com.nazli.simsoft.replay.ReplayService;
+import com.nazli.simsoft.util.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(Constants.API_BASE_PATH + "/replay")
+public class ReplayController {
+
+    @Autowired
+    private ReplayService replayService;
+
+    @GetMapping("/info")
+    public ResponseEntity<ReplayInfo> getInfo() {
+        if (!replayService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(replayService.getInfo());
+    }
+
+    @GetMapping("/shapes")
+    public ResponseEntity<byte[]> getShapes(@RequestParam(defaultValue = "-1") long tick) {
+        if (!replayService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            // Same frame format as /api/shapes, for the world as it was at that tick
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(replayService.rebuild(tick).getSnapshotFrame().getPayload());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
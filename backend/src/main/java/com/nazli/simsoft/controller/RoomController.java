@@ -0,0 +1,119 @@
+package com.nazli.simsoft.controller;
+
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.service.RoomService;
+import com.nazli.simsoft.service.SimulationWorld;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Same commands as {@link WebSocketController}, scoped to a named room:
+ * {@code /app/rooms/{roomId}/...} replies on {@code /topic/rooms/{roomId}/shapes}, except
+ * {@code getShapes}, which replies to the asking session on
+ * {@code /user/queue/rooms/{roomId}/shapes}.
+ */
+@Controller
+@MessageMapping("/rooms/{roomId}")
+public class RoomController {
+
+    private static final String ROOM_TOPIC = "/topic/rooms/{roomId}/shapes";
+
+    @Autowired
+    private RoomService roomService;
+
+    @MessageMapping("/initializeShapes")
+    public void initializeShapes(@DestinationVariable String roomId, Map<String, Object> request) {
+        // Handle null request
+        if (request == null) {
+            request = new HashMap<>();
+        }
+
+        int circles = ((Number) request.getOrDefault("circles", 0)).intValue();
+        int rectangles = ((Number) request.getOrDefault("rectangles", 0)).intValue();
+        int triangles = ((Number) request.getOrDefault("triangles", 0)).intValue();
+
+        // Handle panel size if provided; set by the same command, so it lands on the same world
+        boolean resize = request.containsKey("panelWidth") && request.containsKey("panelHeight");
+        double width = resize ? ((Number) request.get("panelWidth")).doubleValue() : 0;
+        double height = resize ? ((Number) request.get("panelHeight")).doubleValue() : 0;
+
+        roomService.submit(roomId, w -> {
+            if (resize) {
+                try {
+                    w.getPanelConfig().setPanelSize(width, height);
+                } catch (IllegalArgumentException e) {
+                    // Like the default world, an invalid size initializes nothing; thrown here it
+                    // would cost the room its tick
+                    return;
+                }
+            }
+            w.initializeShapes(circles, rectangles, triangles);
+        });
+    }
+
+    @MessageMapping("/addShapes")
+    public void addShapes(@DestinationVariable String roomId, Map<String, Object> request) {
+        if (request == null) return;
+        int circles = ((Number) request.getOrDefault("circles", 0)).intValue();
+        int rectangles = ((Number) request.getOrDefault("rectangles", 0)).intValue();
+        int triangles = ((Number) request.getOrDefault("triangles", 0)).intValue();
+        roomService.submit(roomId, w -> w.addShapes(circles, rectangles, triangles));
+    }
+
+    @MessageMapping("/removeShapes")
+    public void removeShapes(@DestinationVariable String roomId, List<String> ids) {
+        if (ids == null || ids.isEmpty()) return;
+        int[] parsed = WebSocketController.parseIds(ids);
+        roomService.submit(roomId, w -> w.removeShapes(parsed));
+    }
+
+    @MessageMapping("/updateShapes")
+    public void updateShapes(@DestinationVariable String roomId, List<ShapeDelta> updates) {
+        if (updates == null || updates.isEmpty()) return;
+        List<ShapeDelta> parsed = WebSocketController.withoutNulls(updates);
+        roomService.submit(roomId, w -> w.updateShapes(parsed));
+    }
+
+    @MessageMapping("/getShapes")
+    public void getShapes(@DestinationVariable String roomId, SimpMessageHeaderAccessor headers) {
+        roomService.requestSnapshot(roomId, headers.getSessionId());
+    }
+
+    @MessageMapping("/reset")
+    public void resetSimulation(@DestinationVariable String roomId) {
+        roomService.submit(roomId, SimulationWorld::resetSimulation);
+    }
+
+    @MessageMapping("/getPanelConfig")
+    @SendTo(ROOM_TOPIC)
+    public Object getPanelConfig(@DestinationVariable String roomId) {
+        return roomService.getRoom(roomId).getPanelConfig().getCurrentConfig();
+    }
+
+    @MessageMapping("/setPanelSize")
+    @SendTo(ROOM_TOPIC)
+    public Object setPanelSize(@DestinationVariable String roomId, Map<String, Object> request) {
+        SimulationWorld world = roomService.getRoom(roomId);
+        if (request == null || !request.containsKey("width") || !request.containsKey("height")) {
+            return world.getPanelConfig().getCurrentConfig();
+        }
+
+        double width = ((Number) request.get("width")).doubleValue();
+        double height = ((Number) request.get("height")).doubleValue();
+
+        try {
+            return world.getPanelConfig().setPanelSize(width, height);
+        } catch (IllegalArgumentException e) {
+            // Return current config if validation fails
+            return world.getPanelConfig().getCurrentConfig();
+        }
+    }
+}
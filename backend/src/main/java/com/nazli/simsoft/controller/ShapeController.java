@@ -2,11 +2,13 @@ package com.nazli.simsoft.controller;
 
 import com.nazli.simsoft.dto.ShapeResponse;
 import com.nazli.simsoft.dto.TotalShapesResponse;
+import com.nazli.simsoft.service.PhysicsSimulationService;
 import com.nazli.simsoft.service.ShapeService;
 import com.nazli.simsoft.service.ShapeService.ShapeConfiguration;
 import com.nazli.simsoft.util.Constants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 @RestController
@@ -16,16 +18,8 @@ public class ShapeController {
     @Autowired
     private ShapeService shapeService;
 
-   /* @GetMapping("/setShapes")
-    public ResponseEntity<ShapeResponse> setShapes(
-            @RequestParam(defaultValue = "0") int circles,
-            @RequestParam(defaultValue = "0") int rects,
-            @RequestParam(defaultValue = "0") int triangles) {
-        
-        ShapeConfiguration config = shapeService.setShapes(circles, rects, triangles);
-        ShapeResponse response = new ShapeResponse(config.getCircles(), config.getRects(), config.getTriangles());
-        return ResponseEntity.ok(response);
-    } */
+    @Autowired
+    private PhysicsSimulationService physicsSimulationService;
 
     @GetMapping("/getShapes")
     public ResponseEntity<ShapeResponse> getShapes() {
@@ -39,4 +33,12 @@ public class ShapeController {
         int total = shapeService.getTotalShapes();
         return ResponseEntity.ok(new TotalShapesResponse(total));
     }
-} 
\ No newline at end of file
+
+    @GetMapping("/shapes")
+    public ResponseEntity<byte[]> getShapeSnapshot() {
+        // Pre-encoded at full detail, like the WebSocket snapshot replies
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(physicsSimulationService.getSnapshotFrame().getPayload());
+    }
+}
@@ -1,15 +1,22 @@
 package com.nazli.simsoft.controller;
 
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.dto.Viewport;
+import com.nazli.simsoft.model.ShapeStore;
 import com.nazli.simsoft.service.PhysicsSimulationService;
 import com.nazli.simsoft.service.PanelConfigService;
+import com.nazli.simsoft.service.ViewportService;
 import com.nazli.simsoft.util.Constants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Controller
 public class WebSocketController {
@@ -20,9 +27,13 @@ public class WebSocketController {
     @Autowired
     private PanelConfigService panelConfigService;
 
+    @Autowired
+    private ViewportService viewportService;
+
+    // Commands are applied by the simulation loop between ticks, and the next broadcast
+    // carries their result, so they have no reply of their own
     @MessageMapping("/initializeShapes")
-    @SendTo(Constants.TOPIC_SHAPES)
-    public Object initializeShapes(Map<String, Object> request) {
+    public void initializeShapes(Map<String, Object> request) {
         // Handle null request
         if (request == null) {
             request = new HashMap<>();
@@ -40,22 +51,65 @@ public class WebSocketController {
         }
         
         physicsSimulationService.initializeShapes(circles, rectangles, triangles);
-        return physicsSimulationService.getCurrentShapes();
     }
 
+    // Batched changes to the live world, in time proportional to the shapes they touch
+    @MessageMapping("/addShapes")
+    public void addShapes(Map<String, Object> request) {
+        if (request == null) return;
+        physicsSimulationService.addShapes(
+                ((Number) request.getOrDefault("circles", 0)).intValue(),
+                ((Number) request.getOrDefault("rectangles", 0)).intValue(),
+                ((Number) request.getOrDefault("triangles", 0)).intValue());
+    }
+
+    @MessageMapping("/removeShapes")
+    public void removeShapes(List<String> ids) {
+        if (ids == null || ids.isEmpty()) return;
+        physicsSimulationService.removeShapes(parseIds(ids));
+    }
+
+    @MessageMapping("/updateShapes")
+    public void updateShapes(List<ShapeDelta> updates) {
+        if (updates == null || updates.isEmpty()) return;
+        physicsSimulationService.updateShapes(withoutNulls(updates));
+    }
+
+    // Shape ids as sent to clients, such as "shape_12"; anything else is dropped
+    static int[] parseIds(List<String> ids) {
+        return ids.stream().mapToInt(ShapeStore::parseId).filter(id -> id >= 0).toArray();
+    }
+
+    static List<ShapeDelta> withoutNulls(List<ShapeDelta> updates) {
+        return updates.stream().filter(Objects::nonNull).toList();
+    }
+
+    // Only the session that asked needs the full state; the next broadcast sends it on
+    // /user/queue/shapes, at the same sequence number as everyone else's delta
     @MessageMapping("/getShapes")
-    @SendTo(Constants.TOPIC_SHAPES)
-    public Object getShapes() {
-        return physicsSimulationService.getCurrentShapes();
+    public void getShapes(SimpMessageHeaderAccessor headers) {
+        physicsSimulationService.requestSnapshot(headers.getSessionId());
     }
 
     @MessageMapping("/reset")
-    @SendTo(Constants.TOPIC_SHAPES)
-    public Object resetSimulation() {
+    public void resetSimulation() {
         physicsSimulationService.resetSimulation();
-        return physicsSimulationService.getCurrentShapes();
     }
     
+    @MessageMapping("/viewport")
+    public void setViewport(Viewport viewport, SimpMessageHeaderAccessor headers) {
+        try {
+            viewportService.setViewport(headers.getSessionId(), viewport);
+        } catch (IllegalArgumentException e) {
+            // Ignore malformed viewports, the session keeps its previous one
+        }
+    }
+
+    @MessageMapping("/clearViewport")
+    public void clearViewport(SimpMessageHeaderAccessor headers) {
+        viewportService.clearViewport(headers.getSessionId());
+    }
+
     @MessageMapping("/getPanelConfig")
     @SendTo(Constants.TOPIC_SHAPES)
     public Object getPanelConfig() {
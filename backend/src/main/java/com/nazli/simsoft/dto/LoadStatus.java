@@ -0,0 +1,23 @@
+package com.nazli.simsoft.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * How far broadcasts of the default world are currently degraded to keep up.
+ */
+@Data
+@AllArgsConstructor
+public class LoadStatus {
+    private boolean enabled;
+    private int level;
+    private int maxLevel;
+    // Share of the last window the simulation loop spent stepping and broadcasting
+    private double utilization;
+    private double networkRate;
+    private boolean quantized;
+    // Moving shapes below this size are sent on every smallShapeInterval-th delta only, 0 for all
+    private double smallShapeSize;
+    private int smallShapeInterval;
+    private long levelChanges;
+}
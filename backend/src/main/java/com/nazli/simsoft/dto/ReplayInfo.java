@@ -0,0 +1,19 @@
+package com.nazli.simsoft.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * What the replay log of the default world covers.
+ */
+@Data
+@AllArgsConstructor
+public class ReplayInfo {
+    private String file;
+    private long seed;
+    private long firstTick;
+    private long lastTick;
+    private int checkpointInterval;
+    private int records;
+    private long bytes;
+}
@@ -0,0 +1,27 @@
+package com.nazli.simsoft.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Changed fields of a single shape. Unchanged fields stay null and are left out of the JSON;
+ * field names match {@link com.nazli.simsoft.model.Shape} so clients can merge them directly.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ShapeDelta {
+    private String id;
+    private Double x;
+    private Double y;
+    private Double velocityX;
+    private Double velocityY;
+    private Double angle;
+    private Double angularVelocity;
+    private Boolean moving;
+
+    public ShapeDelta(String id) {
+        this.id = id;
+    }
+}
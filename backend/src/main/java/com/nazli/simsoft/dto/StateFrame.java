@@ -0,0 +1,43 @@
+package com.nazli.simsoft.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nazli.simsoft.model.Shape;
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Delta protocol message. A keyframe carries every shape in {@code shapes}; a delta carries
+ * only changed shapes, with only their changed fields, in {@code changes}, plus the ids of
+ * shapes removed in {@code removed} and new shapes in full in {@code added}. A delta with
+ * sequence {@code n} applies on top of the state at {@code n - 1}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StateFrame {
+    public static final String KEYFRAME = "keyframe";
+    public static final String DELTA = "delta";
+
+    private String type;
+    private long seq;
+    private List<Shape> shapes;
+    private List<ShapeDelta> changes;
+    private List<Shape> added;
+    private List<String> removed;
+
+    public static StateFrame keyframe(long seq, List<Shape> shapes) {
+        return new StateFrame(KEYFRAME, seq, shapes, null, null, null);
+    }
+
+    public static StateFrame delta(long seq, List<ShapeDelta> changes) {
+        return delta(seq, changes, null, null);
+    }
+
+    public static StateFrame delta(long seq, List<ShapeDelta> changes, List<Shape> added, List<String> removed) {
+        return new StateFrame(DELTA, seq, null, changes, added, removed);
+    }
+}
@@ -0,0 +1,20 @@
+package com.nazli.simsoft.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The part of the world a client is looking at, in world units, and its zoom
+ * (screen pixels per world unit).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Viewport {
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+    private double zoom = 1.0;
+}
@@ -0,0 +1,45 @@
+package com.nazli.simsoft.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nazli.simsoft.model.Shape;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * What one session sees. {@code x}, {@code y}, {@code width} and {@code height} give the
+ * covered area, the viewport plus its margin. A shapes frame lists every shape that reaches
+ * into that area. A density frame instead splits the area into {@code columns} x {@code rows}
+ * tiles of {@code tileSize} world units and gives the shape count of each, row by row.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ViewportFrame {
+    public static final String SHAPES = "shapes";
+    public static final String DENSITY = "density";
+
+    private String type;
+    private long seq;
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+    private List<Shape> shapes;
+    private Double tileSize;
+    private Integer columns;
+    private Integer rows;
+    private int[] counts;
+
+    public static ViewportFrame shapes(long seq, double x, double y, double width, double height, List<Shape> shapes) {
+        return new ViewportFrame(SHAPES, seq, x, y, width, height, shapes, null, null, null, null);
+    }
+
+    public static ViewportFrame density(long seq, double x, double y, double width, double height,
+                                        double tileSize, int columns, int rows, int[] counts) {
+        return new ViewportFrame(DENSITY, seq, x, y, width, height, null, tileSize, columns, rows, counts);
+    }
+}
@@ -0,0 +1,43 @@
+package com.nazli.simsoft.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times each message on the clientOutbound channel from the moment an executor thread
+ * picks it up until it has been written to the session, and counts the writes in progress.
+ */
+public class OutboundChannelMetricsInterceptor implements ExecutorChannelInterceptor {
+
+    private final Timer timer;
+    private final AtomicInteger active;
+    private final ThreadLocal<Long> started = new ThreadLocal<>();
+
+    public OutboundChannelMetricsInterceptor(Timer timer, AtomicInteger active) {
+        this.timer = timer;
+        this.active = active;
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        started.set(System.nanoTime());
+        active.incrementAndGet();
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        Long start = started.get();
+        if (start != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            started.remove();
+            active.decrementAndGet();
+        }
+    }
+}
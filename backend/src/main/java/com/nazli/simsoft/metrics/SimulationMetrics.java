@@ -0,0 +1,254 @@
+package com.nazli.simsoft.metrics;
+
+import com.nazli.simsoft.broadcast.RawSessionRegistry;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.service.AdaptiveLoadService;
+import com.nazli.simsoft.service.RoomService;
+import com.nazli.simsoft.service.SimulationLoop;
+import com.nazli.simsoft.service.SimulationWorld;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for the simulation and its WebSocket traffic, published through Actuator
+ * (see /actuator/prometheus). Components that own the measured state bind themselves
+ * here, so this class depends on nothing but the registry.
+ */
+@Component
+public class SimulationMetrics {
+
+    public static final String JSON = "json";
+    public static final String BINARY = "binary";
+    public static final String BASE64 = "base64";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private SimulationSettings settings;
+
+    // Resolved lazily: the executor belongs to the broker configuration, which depends on us
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private ObjectProvider<Executor> clientOutboundExecutor;
+
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger outboundActive = new AtomicInteger();
+    private volatile double firstBroadcastMillis = Double.NaN;
+
+    private Timer tickTimer;
+    private Timer rotationTimer;
+    private Timer broadcastTimer;
+    private Timer outboundTimer;
+    private Timer snapshotCaptureTimer;
+    private Timer snapshotWriteTimer;
+    private DistributionSummary jsonPayload;
+    private DistributionSummary binaryPayload;
+    private DistributionSummary base64Payload;
+    private Counter droppedFrames;
+
+    @PostConstruct
+    void init() {
+        Duration stepBudget = Duration.ofNanos(Math.round(1_000_000_000L / settings.getPhysicsRate()));
+        Duration broadcastBudget = Duration.ofNanos(Math.round(1_000_000_000L / settings.getNetworkRate()));
+
+        tickTimer = Timer.builder("simulation.tick")
+                .description("Time spent in one fixed physics step")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(stepBudget)
+                .register(registry);
+        rotationTimer = Timer.builder("simulation.rotate")
+                .description("Time spent choosing which shapes move next")
+                .publishPercentileHistogram()
+                .register(registry);
+        broadcastTimer = Timer.builder("simulation.broadcast")
+                .description("Time spent encoding and handing one broadcast to the broker")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(broadcastBudget)
+                .register(registry);
+        outboundTimer = Timer.builder("websocket.outbound.send")
+                .description("Time the clientOutbound channel spends writing one message to a session")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        snapshotCaptureTimer = Timer.builder("simulation.snapshot.capture")
+                .description("Time spent copying and serializing one world for a persisted snapshot")
+                .publishPercentileHistogram()
+                .register(registry);
+        snapshotWriteTimer = Timer.builder("simulation.snapshot.write")
+                .description("Time spent on one round of world snapshots, copies and database writes included")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        jsonPayload = payloadSummary(JSON);
+        binaryPayload = payloadSummary(BINARY);
+        base64Payload = payloadSummary(BASE64);
+
+        droppedFrames = Counter.builder("websocket.frames.dropped")
+                .description("State frames superseded or skipped because a session was still busy")
+                .register(registry);
+
+        TimeGauge.builder("simulation.startup.first-broadcast", this, TimeUnit.MILLISECONDS, m -> m.firstBroadcastMillis)
+                .description("Time from JVM start to the first broadcast of the default world")
+                .register(registry);
+        Gauge.builder("websocket.sessions", sessions, Set::size)
+                .description("Connected STOMP sessions")
+                .register(registry);
+        Gauge.builder("websocket.outbound.queue", this, SimulationMetrics::outboundQueueDepth)
+                .description("Messages waiting for a clientOutbound channel thread; always 0 on virtual threads")
+                .register(registry);
+        Gauge.builder("websocket.outbound.active", outboundActive, AtomicInteger::get)
+                .description("Messages the clientOutbound channel is writing to sessions right now")
+                .register(registry);
+    }
+
+    private DistributionSummary payloadSummary(String encoding) {
+        return DistributionSummary.builder("simulation.broadcast.payload")
+                .description("Size of one broadcast frame")
+                .baseUnit("bytes")
+                .tag("encoding", encoding)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void bindLoop(SimulationLoop loop) {
+        FunctionCounter.builder("simulation.ticks", loop, SimulationLoop::getSteps)
+                .description("Physics steps run")
+                .register(registry);
+        FunctionCounter.builder("simulation.ticks.overrun", loop, SimulationLoop::getOverruns)
+                .description("Physics steps that took longer than their budget")
+                .register(registry);
+        FunctionCounter.builder("simulation.ticks.missed", loop, SimulationLoop::getDroppedSteps)
+                .description("Physics steps skipped by the catch-up cap")
+                .register(registry);
+        FunctionCounter.builder("simulation.broadcasts", loop, SimulationLoop::getBroadcasts)
+                .description("Broadcasts sent")
+                .register(registry);
+    }
+
+    /**
+     * Gauges for the default world. Rooms are reported in aggregate by {@link #bindRooms}.
+     */
+    public void bindWorld(SimulationWorld world) {
+        world.setRotationTimer(rotationTimer);
+        Gauge.builder("simulation.shapes", world, SimulationWorld::getShapeCount)
+                .description("Shapes in the default world")
+                .register(registry);
+        Gauge.builder("simulation.shapes.moving", world, SimulationWorld::getMovingCount)
+                .description("Moving shapes in the default world")
+                .register(registry);
+    }
+
+    public void bindRooms(RoomService rooms) {
+        Gauge.builder("simulation.rooms", rooms, RoomService::getRoomCount)
+                .description("Open rooms")
+                .register(registry);
+        Gauge.builder("simulation.rooms.active", rooms, RoomService::getActiveRoomCount)
+                .description("Rooms currently ticking")
+                .register(registry);
+    }
+
+    public void bindAdaptiveLoad(AdaptiveLoadService adaptiveLoad) {
+        Gauge.builder("simulation.adaptive.level", adaptiveLoad, AdaptiveLoadService::getLevel)
+                .description("Current broadcast degradation level, 0 for full detail")
+                .register(registry);
+        Gauge.builder("simulation.adaptive.utilization", adaptiveLoad, AdaptiveLoadService::getUtilization)
+                .description("Share of the last window the simulation loop was busy")
+                .register(registry);
+        FunctionCounter.builder("simulation.adaptive.changes", adaptiveLoad, AdaptiveLoadService::getLevelChanges)
+                .description("Times the broadcast degradation level changed")
+                .register(registry);
+    }
+
+    public void bindRawSessions(RawSessionRegistry rawSessions) {
+        Gauge.builder("websocket.raw.sessions", rawSessions, RawSessionRegistry::getSessionCount)
+                .description("Connected sessions on the raw WebSocket endpoint")
+                .register(registry);
+    }
+
+    public Timer getTickTimer() {
+        return tickTimer;
+    }
+
+    public Timer getBroadcastTimer() {
+        return broadcastTimer;
+    }
+
+    public Timer getOutboundTimer() {
+        return outboundTimer;
+    }
+
+    public AtomicInteger getOutboundActive() {
+        return outboundActive;
+    }
+
+    public Timer getSnapshotCaptureTimer() {
+        return snapshotCaptureTimer;
+    }
+
+    public Timer getSnapshotWriteTimer() {
+        return snapshotWriteTimer;
+    }
+
+    public void recordPayload(String encoding, int bytes) {
+        switch (encoding) {
+            case BINARY:
+                binaryPayload.record(bytes);
+                break;
+            case BASE64:
+                base64Payload.record(bytes);
+                break;
+            default:
+                jsonPayload.record(bytes);
+        }
+    }
+
+    public void recordFirstBroadcast(long uptimeMillis) {
+        firstBroadcastMillis = uptimeMillis;
+    }
+
+    public void recordDroppedFrame() {
+        droppedFrames.increment();
+    }
+
+    // A session may see more than one disconnect event, hence the set
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            sessions.add(sessionId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    private double outboundQueueDepth() {
+        Executor executor = clientOutboundExecutor.getIfAvailable();
+        return executor instanceof ThreadPoolTaskExecutor pool ? pool.getQueueSize() : 0;
+    }
+}
@@ -0,0 +1,616 @@
+package com.nazli.simsoft.model;
+
+import com.nazli.simsoft.util.Constants;
+import com.nazli.simsoft.util.SeededRandom;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Structure-of-arrays world state. Every body is an index into parallel primitive arrays,
+ * so the integration loop walks contiguous memory and allocates nothing. {@link Shape}
+ * objects are only built at the API edge.
+ *
+ * Moving bodies are also listed in an active set, kept up to date by {@link #startMoving},
+ * {@link #stopMoving} and {@link #stopAll}, so per-tick work can skip sleeping bodies.
+ * Bodies are found by id through an index kept alongside, so single bodies can be removed
+ * or changed without a scan. The index is an open-addressing table sized by the body
+ * capacity, so ids that only ever grow under add/remove churn do not grow it.
+ */
+public class ShapeStore {
+
+    public static final byte CIRCLE = 0;
+    public static final byte RECTANGLE = 1;
+    public static final byte TRIANGLE = 2;
+
+    private static final String[] TYPE_NAMES = {"circle", "rectangle", "triangle"};
+    private static final String ID_PREFIX = "shape_";
+    private static final int INITIAL_CAPACITY = 64;
+    // id, type, color and seven doubles, as laid out by writeTo
+    private static final int BODY_BYTES = 4 + 1 + 1 + 7 * 8;
+
+    private int count;
+    private int[] ids;
+    private byte[] types;
+    private byte[] colors;
+    private double[] x;
+    private double[] y;
+    private double[] velocityX;
+    private double[] velocityY;
+    private double[] angle;
+    private double[] angularVelocity;
+    private double[] size;
+    private boolean[] moving;
+
+    // Indices of moving bodies, in no particular order, and each body's slot in it (-1 if asleep)
+    private int activeCount;
+    private int[] active;
+    private int[] activeSlot;
+    // Bumped whenever a body wakes or falls asleep, or a command changes a sleeping one
+    private long activityVersion;
+    // Bodies woken or changed by a command since the last clearWoken(), each listed once,
+    // and each body's slot in that list (-1 if not listed)
+    private int wokenCount;
+    private int[] woken;
+    private int[] wokenSlot;
+
+    // Index of every body by id: linear probing over a power-of-two table at most half full,
+    // ids in idKeys (NO_ID for a free slot) and their body index in idIndices
+    private static final int NO_ID = -1;
+    private int[] idKeys;
+    private int[] idIndices;
+    private final int[] typeCounts = new int[TYPE_NAMES.length];
+
+    public ShapeStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public static byte typeCode(String type) {
+        for (byte code = 0; code < TYPE_NAMES.length; code++) {
+            if (TYPE_NAMES[code].equals(type)) return code;
+        }
+        throw new IllegalArgumentException("Unknown shape type: " + type);
+    }
+
+    public static String typeName(byte code) {
+        return TYPE_NAMES[code];
+    }
+
+    public static String formatId(int id) {
+        return ID_PREFIX + id;
+    }
+
+    /**
+     * The number in an id made by {@link #formatId}, or -1 if it is not one.
+     */
+    public static int parseId(String id) {
+        if (id == null || !id.startsWith(ID_PREFIX)) return -1;
+        try {
+            return Math.max(-1, Integer.parseInt(id.substring(ID_PREFIX.length())));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public int add(int id, byte type, double posX, double posY, double shapeSize, byte color) {
+        if (count == ids.length) {
+            grow(count * 2);
+        }
+        int index = count++;
+        ids[index] = id;
+        types[index] = type;
+        colors[index] = color;
+        x[index] = posX;
+        y[index] = posY;
+        size[index] = shapeSize;
+        velocityX[index] = 0;
+        velocityY[index] = 0;
+        angle[index] = 0;
+        angularVelocity[index] = 0;
+        moving[index] = false;
+        activeSlot[index] = -1;
+        wokenSlot[index] = -1;
+        typeCounts[type]++;
+        index(id, index);
+        activityVersion++;
+        return index;
+    }
+
+    /**
+     * Removes a body by moving the last one into its place, and returns the index that body
+     * had, which is now free; the same as {@code index} when the removed body was the last.
+     */
+    public int remove(int index) {
+        stopMoving(index);
+        unlistWoken(index);
+        unindex(ids[index]);
+        typeCounts[types[index]]--;
+        int last = --count;
+        if (index != last) {
+            ids[index] = ids[last];
+            types[index] = types[last];
+            colors[index] = colors[last];
+            x[index] = x[last];
+            y[index] = y[last];
+            velocityX[index] = velocityX[last];
+            velocityY[index] = velocityY[last];
+            angle[index] = angle[last];
+            angularVelocity[index] = angularVelocity[last];
+            size[index] = size[last];
+            moving[index] = moving[last];
+            activeSlot[index] = activeSlot[last];
+            if (moving[index]) {
+                active[activeSlot[index]] = index;
+            }
+            wokenSlot[index] = wokenSlot[last];
+            if (wokenSlot[index] >= 0) {
+                woken[wokenSlot[index]] = index;
+            }
+            wokenSlot[last] = -1;
+            index(ids[index], index);
+        }
+        activityVersion++;
+        return last;
+    }
+
+    /**
+     * The index of the body with this id, or -1 if there is none.
+     */
+    public int indexOf(int id) {
+        if (id == NO_ID) return -1;
+        int mask = idKeys.length - 1;
+        for (int slot = idSlot(id); ; slot = (slot + 1) & mask) {
+            int key = idKeys[slot];
+            if (key == id) return idIndices[slot];
+            if (key == NO_ID) return -1;
+        }
+    }
+
+    public int getTypeCount(byte type) {
+        return typeCounts[type];
+    }
+
+    public void clear() {
+        Arrays.fill(idKeys, NO_ID);
+        count = 0;
+        activeCount = 0;
+        Arrays.fill(typeCounts, 0);
+        activityVersion++;
+        clearWoken();
+    }
+
+    /**
+     * Advances every moving body by one step. Sleeping bodies are not visited at all.
+     */
+    public void integrate(double deltaTime, double panelWidth, double panelHeight) {
+        integrate(0, activeCount, deltaTime, panelWidth, panelHeight);
+    }
+
+    /**
+     * Advances the moving bodies in active set slots {@code from} (inclusive) to {@code to}
+     * (exclusive). Each body has one slot, so separate ranges can run on separate threads.
+     */
+    public void integrate(int from, int to, double deltaTime, double panelWidth, double panelHeight) {
+        double[] px = x, py = y, vx = velocityX, vy = velocityY, a = angle, va = angularVelocity;
+        int[] bodies = active;
+
+        for (int k = from; k < to; k++) {
+            int i = bodies[k];
+
+            // Update position and angle
+            px[i] += vx[i] * deltaTime;
+            py[i] += vy[i] * deltaTime;
+            a[i] += va[i] * deltaTime;
+
+            // Handle boundary collisions
+            double halfSize = size[i] / 2;
+
+            // Left and right boundaries
+            if (px[i] - halfSize <= 0) {
+                px[i] = halfSize;
+                vx[i] = Math.abs(vx[i]);
+            } else if (px[i] + halfSize >= panelWidth) {
+                px[i] = panelWidth - halfSize;
+                vx[i] = -Math.abs(vx[i]);
+            }
+
+            // Top and bottom boundaries
+            if (py[i] - halfSize <= 0) {
+                py[i] = halfSize;
+                vy[i] = Math.abs(vy[i]);
+            } else if (py[i] + halfSize >= panelHeight) {
+                py[i] = panelHeight - halfSize;
+                vy[i] = -Math.abs(vy[i]);
+            }
+        }
+    }
+
+    public void startMoving(int index, double maxVelocity, SeededRandom random) {
+        wake(index);
+        velocityX[index] = (random.nextDouble() - 0.5) * maxVelocity;
+        velocityY[index] = (random.nextDouble() - 0.5) * maxVelocity;
+        angularVelocity[index] = (random.nextDouble() - 0.5) * Constants.ANGULAR_VELOCITY_RANGE;
+    }
+
+    /**
+     * Sets a body's velocities; it moves if any of them is non-zero and sleeps otherwise.
+     */
+    public void setMotion(int index, double vx, double vy, double va) {
+        if (vx == 0 && vy == 0 && va == 0) {
+            stopMoving(index);
+            return;
+        }
+        wake(index);
+        velocityX[index] = vx;
+        velocityY[index] = vy;
+        angularVelocity[index] = va;
+    }
+
+    /**
+     * Lists a body whose state a command changed with the woken ones, so a sleeping body is
+     * looked at by the next delta too. A sleeping body may have moved, so anything cached
+     * against {@link #getActivityVersion()} is stale as well.
+     */
+    public void markChanged(int index) {
+        if (!moving[index]) {
+            activityVersion++;
+        }
+        listWoken(index);
+    }
+
+    private void wake(int index) {
+        if (!moving[index]) {
+            activeSlot[index] = activeCount;
+            active[activeCount++] = index;
+            activityVersion++;
+            listWoken(index);
+        }
+        moving[index] = true;
+    }
+
+    private void listWoken(int index) {
+        if (wokenSlot[index] < 0) {
+            wokenSlot[index] = wokenCount;
+            woken[wokenCount++] = index;
+        }
+    }
+
+    private void unlistWoken(int index) {
+        int slot = wokenSlot[index];
+        if (slot < 0) return;
+        int last = woken[--wokenCount];
+        woken[slot] = last;
+        wokenSlot[last] = slot;
+        wokenSlot[index] = -1;
+    }
+
+    public void stopMoving(int index) {
+        if (moving[index]) {
+            // Move the last active body into the freed slot
+            int slot = activeSlot[index];
+            int last = active[--activeCount];
+            active[slot] = last;
+            activeSlot[last] = slot;
+            activeSlot[index] = -1;
+            activityVersion++;
+        }
+        moving[index] = false;
+        velocityX[index] = 0;
+        velocityY[index] = 0;
+        angularVelocity[index] = 0;
+    }
+
+    /**
+     * Puts every moving body to sleep, touching only the active set.
+     */
+    public void stopAll() {
+        for (int k = 0; k < activeCount; k++) {
+            int i = active[k];
+            moving[i] = false;
+            velocityX[i] = 0;
+            velocityY[i] = 0;
+            angularVelocity[i] = 0;
+            activeSlot[i] = -1;
+        }
+        activeCount = 0;
+        activityVersion++;
+    }
+
+    public Shape toShape(int index) {
+        return new Shape(
+                formatId(ids[index]),
+                TYPE_NAMES[types[index]],
+                x[index],
+                y[index],
+                velocityX[index],
+                velocityY[index],
+                angle[index],
+                angularVelocity[index],
+                moving[index],
+                Constants.SHAPE_COLORS[colors[index]],
+                size[index]);
+    }
+
+    public List<Shape> toShapes() {
+        List<Shape> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(toShape(i));
+        }
+        return result;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Indices of the moving bodies in slots {@code 0} to {@link #getActiveCount()} - 1.
+     */
+    public int[] getActive() {
+        return active;
+    }
+
+    public long getActivityVersion() {
+        return activityVersion;
+    }
+
+    /**
+     * Bodies woken or changed by a command since the last {@link #clearWoken()}, including
+     * any that have gone back to sleep since, in slots {@code 0} to {@link #getWokenCount()} - 1.
+     */
+    public int[] getWoken() {
+        return woken;
+    }
+
+    public int getWokenCount() {
+        return wokenCount;
+    }
+
+    public void clearWoken() {
+        for (int k = 0; k < wokenCount; k++) {
+            wokenSlot[woken[k]] = -1;
+        }
+        wokenCount = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Replaces the contents with a copy of {@code source}, array by array.
+     */
+    public void copyFrom(ShapeStore source) {
+        clear();
+        int bodies = source.count;
+        ensureCapacity(bodies);
+        System.arraycopy(source.ids, 0, ids, 0, bodies);
+        System.arraycopy(source.types, 0, types, 0, bodies);
+        System.arraycopy(source.colors, 0, colors, 0, bodies);
+        System.arraycopy(source.x, 0, x, 0, bodies);
+        System.arraycopy(source.y, 0, y, 0, bodies);
+        System.arraycopy(source.velocityX, 0, velocityX, 0, bodies);
+        System.arraycopy(source.velocityY, 0, velocityY, 0, bodies);
+        System.arraycopy(source.angle, 0, angle, 0, bodies);
+        System.arraycopy(source.angularVelocity, 0, angularVelocity, 0, bodies);
+        System.arraycopy(source.size, 0, size, 0, bodies);
+        System.arraycopy(source.moving, 0, moving, 0, bodies);
+        System.arraycopy(source.activeSlot, 0, activeSlot, 0, bodies);
+        System.arraycopy(source.active, 0, active, 0, source.activeCount);
+        count = bodies;
+        activeCount = source.activeCount;
+        System.arraycopy(source.typeCounts, 0, typeCounts, 0, typeCounts.length);
+        for (int i = 0; i < bodies; i++) {
+            index(ids[i], i);
+        }
+        activityVersion++;
+    }
+
+    /**
+     * Bytes {@link #writeTo} needs for the current state.
+     */
+    public long getSerializedSize() {
+        return 8 + (long) count * BODY_BYTES + (long) activeCount * 4;
+    }
+
+    /**
+     * Writes every body and the active set, in slot order, so a store read back with
+     * {@link #readFrom} iterates its moving bodies exactly as this one does.
+     */
+    public void writeTo(ByteBuffer out) {
+        out.putInt(count);
+        for (int i = 0; i < count; i++) {
+            out.putInt(ids[i]);
+            out.put(types[i]);
+            out.put(colors[i]);
+            out.putDouble(x[i]);
+            out.putDouble(y[i]);
+            out.putDouble(velocityX[i]);
+            out.putDouble(velocityY[i]);
+            out.putDouble(angle[i]);
+            out.putDouble(angularVelocity[i]);
+            out.putDouble(size[i]);
+        }
+        out.putInt(activeCount);
+        for (int k = 0; k < activeCount; k++) {
+            out.putInt(active[k]);
+        }
+    }
+
+    /**
+     * Replaces the contents with a state written by {@link #writeTo}.
+     */
+    public void readFrom(ByteBuffer in) {
+        clear();
+        int bodies = in.getInt();
+        ensureCapacity(bodies);
+        for (int i = 0; i < bodies; i++) {
+            ids[i] = in.getInt();
+            types[i] = in.get();
+            colors[i] = in.get();
+            x[i] = in.getDouble();
+            y[i] = in.getDouble();
+            velocityX[i] = in.getDouble();
+            velocityY[i] = in.getDouble();
+            angle[i] = in.getDouble();
+            angularVelocity[i] = in.getDouble();
+            size[i] = in.getDouble();
+            moving[i] = false;
+            activeSlot[i] = -1;
+            wokenSlot[i] = -1;
+            typeCounts[types[i]]++;
+            index(ids[i], i);
+        }
+        count = bodies;
+        int movingCount = in.getInt();
+        for (int k = 0; k < movingCount; k++) {
+            int i = in.getInt();
+            moving[i] = true;
+            activeSlot[i] = k;
+            active[k] = i;
+        }
+        activeCount = movingCount;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public byte[] getTypes() {
+        return types;
+    }
+
+    public byte[] getColors() {
+        return colors;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getVelocityX() {
+        return velocityX;
+    }
+
+    public double[] getVelocityY() {
+        return velocityY;
+    }
+
+    public double[] getAngle() {
+        return angle;
+    }
+
+    public double[] getAngularVelocity() {
+        return angularVelocity;
+    }
+
+    public double[] getSize() {
+        return size;
+    }
+
+    public boolean[] getMoving() {
+        return moving;
+    }
+
+    private int idSlot(int id) {
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (idKeys.length - 1);
+    }
+
+    private void index(int id, int index) {
+        int mask = idKeys.length - 1;
+        int slot = idSlot(id);
+        while (idKeys[slot] != NO_ID && idKeys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        idKeys[slot] = id;
+        idIndices[slot] = index;
+    }
+
+    // Frees the id's slot and shifts later entries of the same probe run back into it, so
+    // lookups never need tombstones and churn cannot fill the table
+    private void unindex(int id) {
+        int mask = idKeys.length - 1;
+        int hole = idSlot(id);
+        while (idKeys[hole] != id) {
+            if (idKeys[hole] == NO_ID) return;
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; idKeys[slot] != NO_ID; slot = (slot + 1) & mask) {
+            // Movable unless its home slot lies after the hole, between the hole and here
+            if (((slot - idSlot(idKeys[slot])) & mask) >= ((slot - hole) & mask)) {
+                idKeys[hole] = idKeys[slot];
+                idIndices[hole] = idIndices[slot];
+                hole = slot;
+            }
+        }
+        idKeys[hole] = NO_ID;
+    }
+
+    // Twice the body capacity, rounded up to a power of two
+    private static int idTableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        types = new byte[capacity];
+        colors = new byte[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        angle = new double[capacity];
+        angularVelocity = new double[capacity];
+        size = new double[capacity];
+        moving = new boolean[capacity];
+        active = new int[capacity];
+        activeSlot = new int[capacity];
+        woken = new int[capacity];
+        wokenSlot = new int[capacity];
+        Arrays.fill(wokenSlot, -1);
+        idKeys = new int[idTableSize(capacity)];
+        idIndices = new int[idKeys.length];
+        Arrays.fill(idKeys, NO_ID);
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        types = Arrays.copyOf(types, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        angularVelocity = Arrays.copyOf(angularVelocity, capacity);
+        size = Arrays.copyOf(size, capacity);
+        moving = Arrays.copyOf(moving, capacity);
+        active = Arrays.copyOf(active, capacity);
+        activeSlot = Arrays.copyOf(activeSlot, capacity);
+        woken = Arrays.copyOf(woken, capacity);
+        int length = wokenSlot.length;
+        wokenSlot = Arrays.copyOf(wokenSlot, capacity);
+        Arrays.fill(wokenSlot, length, capacity, -1);
+        if (idTableSize(capacity) > idKeys.length) {
+            idKeys = new int[idTableSize(capacity)];
+            idIndices = new int[idKeys.length];
+            Arrays.fill(idKeys, NO_ID);
+            for (int i = 0; i < count; i++) {
+                index(ids[i], i);
+            }
+        }
+    }
+}
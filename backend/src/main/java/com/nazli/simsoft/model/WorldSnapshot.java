@@ -0,0 +1,41 @@
+package com.nazli.simsoft.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * The latest persisted state of one world: a single row holding its whole checkpoint as
+ * one BLOB, overwritten by every snapshot.
+ */
+@Entity
+@Table(name = "world_snapshots")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorldSnapshot {
+
+    @Id
+    @Column(name = "world_id", length = 80)
+    private String worldId;
+
+    // Layout version of the checkpoint, see SimulationWorld.CHECKPOINT_FORMAT
+    private int format;
+
+    private long tick;
+
+    private Instant savedAt;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] state;
+}
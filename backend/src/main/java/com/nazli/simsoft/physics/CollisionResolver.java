@@ -0,0 +1,196 @@
+package com.nazli.simsoft.physics;
+
+import com.nazli.simsoft.model.ShapeStore;
+import com.nazli.simsoft.util.Constants;
+
+/**
+ * Shape-to-shape collisions: spatial hash broad-phase, then a support-distance test along
+ * the line between centers for circles, rectangles and triangles. Moving bodies get a fresh
+ * grid every tick; sleeping bodies never move, so their grid is only rebuilt when the set of
+ * sleepers changes, and a tick costs in proportion to the moving bodies.
+ */
+public class CollisionResolver {
+
+    // A square or triangle reaches out to half its size times sqrt(2) from its center
+    private static final double BOUNDING_FACTOR = Math.sqrt(2) / 2;
+
+    private final SpatialHashGrid movingGrid = new SpatialHashGrid(Constants.COLLISION_CELL_SIZE);
+    private final SpatialHashGrid sleepingGrid = new SpatialHashGrid(Constants.COLLISION_CELL_SIZE);
+    private int[] sleepers = new int[0];
+    private ShapeStore sleepersOf;
+    private long sleepersVersion = -1;
+    private double sleepersWidth;
+    private double sleepersHeight;
+    private ShapeStore store;
+    private int current;
+
+    // Bound once so a tick allocates no visitor objects
+    private final SpatialHashGrid.PairVisitor pairVisitor = this::resolvePair;
+    private final SpatialHashGrid.ItemVisitor sleeperVisitor = this::resolveAgainstSleeper;
+
+    public void resolve(ShapeStore shapes, double panelWidth, double panelHeight) {
+        store = shapes;
+        int[] active = shapes.getActive();
+        int activeCount = shapes.getActiveCount();
+
+        // Moving against moving
+        movingGrid.build(shapes.getX(), shapes.getY(), active, activeCount, panelWidth, panelHeight);
+        movingGrid.forEachCandidatePair(pairVisitor);
+
+        // Moving against sleeping: look up the sleepers around each moving body
+        refreshSleepers(shapes, panelWidth, panelHeight);
+        if (sleepingGrid.getCount() > 0) {
+            double[] x = shapes.getX();
+            double[] y = shapes.getY();
+            double[] size = shapes.getSize();
+            for (int k = 0; k < activeCount; k++) {
+                current = active[k];
+                double reach = (size[current] + Constants.MAX_SIZE) * BOUNDING_FACTOR;
+                sleepingGrid.forEachInRect(x[current] - reach, y[current] - reach,
+                        x[current] + reach, y[current] + reach, sleeperVisitor);
+            }
+        }
+
+        keepInside(shapes, panelWidth, panelHeight);
+        store = null;
+    }
+
+    private void resolveAgainstSleeper(int sleeper) {
+        resolvePair(current, sleeper);
+    }
+
+    private void refreshSleepers(ShapeStore shapes, double panelWidth, double panelHeight) {
+        if (shapes == sleepersOf && shapes.getActivityVersion() == sleepersVersion
+                && panelWidth == sleepersWidth && panelHeight == sleepersHeight) {
+            return;
+        }
+        int count = shapes.size();
+        if (sleepers.length < count) {
+            sleepers = new int[count];
+        }
+        boolean[] moving = shapes.getMoving();
+        int sleeping = 0;
+        for (int i = 0; i < count; i++) {
+            if (!moving[i]) sleepers[sleeping++] = i;
+        }
+        sleepingGrid.build(shapes.getX(), shapes.getY(), sleepers, sleeping, panelWidth, panelHeight);
+        sleepersOf = shapes;
+        sleepersVersion = shapes.getActivityVersion();
+        sleepersWidth = panelWidth;
+        sleepersHeight = panelHeight;
+    }
+
+    // Contact corrections can push a body past the walls; the next step's boundary pass only
+    // sees moving bodies, so one that stops out there would stay out for good
+    private void keepInside(ShapeStore shapes, double panelWidth, double panelHeight) {
+        double[] x = shapes.getX();
+        double[] y = shapes.getY();
+        double[] size = shapes.getSize();
+        int[] active = shapes.getActive();
+        for (int k = 0, count = shapes.getActiveCount(); k < count; k++) {
+            int i = active[k];
+            double halfSize = size[i] / 2;
+            x[i] = Math.max(halfSize, Math.min(panelWidth - halfSize, x[i]));
+            y[i] = Math.max(halfSize, Math.min(panelHeight - halfSize, y[i]));
+        }
+    }
+
+    private void resolvePair(int a, int b) {
+        boolean[] moving = store.getMoving();
+
+        // Resting shapes overlapping each other are left alone, only moving bodies push
+        if (!moving[a] && !moving[b]) return;
+
+        double[] x = store.getX();
+        double[] y = store.getY();
+        double[] size = store.getSize();
+
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double distanceSq = dx * dx + dy * dy;
+        double reach = (size[a] + size[b]) * BOUNDING_FACTOR;
+        if (distanceSq >= reach * reach) return;
+
+        double distance = Math.sqrt(distanceSq);
+        double nx;
+        double ny;
+        if (distance > 1e-9) {
+            nx = dx / distance;
+            ny = dy / distance;
+        } else {
+            nx = 1;
+            ny = 0;
+        }
+
+        double penetration = support(a, nx, ny) + support(b, -nx, -ny) - distance;
+        if (penetration <= 0) return;
+
+        if (moving[a] && moving[b]) {
+            double[] vx = store.getVelocityX();
+            double[] vy = store.getVelocityY();
+
+            // Equal masses: split the correction and swap the normal velocity components
+            double half = penetration / 2;
+            x[a] -= nx * half;
+            y[a] -= ny * half;
+            x[b] += nx * half;
+            y[b] += ny * half;
+
+            double relative = (vx[b] - vx[a]) * nx + (vy[b] - vy[a]) * ny;
+            if (relative < 0) {
+                vx[a] += relative * nx;
+                vy[a] += relative * ny;
+                vx[b] -= relative * nx;
+                vy[b] -= relative * ny;
+            }
+        } else if (moving[a]) {
+            bounceOff(a, -nx, -ny, penetration);
+        } else {
+            bounceOff(b, nx, ny, penetration);
+        }
+    }
+
+    // Resting shapes act as immovable obstacles; (nx, ny) points away from the obstacle
+    private void bounceOff(int index, double nx, double ny, double penetration) {
+        double[] vx = store.getVelocityX();
+        double[] vy = store.getVelocityY();
+        store.getX()[index] += nx * penetration;
+        store.getY()[index] += ny * penetration;
+
+        double normalVelocity = vx[index] * nx + vy[index] * ny;
+        if (normalVelocity < 0) {
+            vx[index] -= 2 * normalVelocity * nx;
+            vy[index] -= 2 * normalVelocity * ny;
+        }
+    }
+
+    /**
+     * Distance from the shape's center to its outline along the unit direction (nx, ny),
+     * matching the outlines drawn by the frontend canvas.
+     */
+    private double support(int index, double nx, double ny) {
+        double halfSize = store.getSize()[index] / 2;
+        byte type = store.getTypes()[index];
+        if (type == ShapeStore.CIRCLE) {
+            return halfSize;
+        }
+
+        // Rotate the direction into the shape's local frame
+        double shapeAngle = store.getAngle()[index];
+        double cos = Math.cos(shapeAngle);
+        double sin = Math.sin(shapeAngle);
+        double lx = nx * cos + ny * sin;
+        double ly = -nx * sin + ny * cos;
+
+        if (type == ShapeStore.TRIANGLE) {
+            // Vertices (0, -h), (-h, h), (h, h)
+            double top = -ly * halfSize;
+            double left = (-lx + ly) * halfSize;
+            double right = (lx + ly) * halfSize;
+            return Math.max(top, Math.max(left, right));
+        }
+
+        // Rectangle: axis-aligned square in its local frame
+        return (Math.abs(lx) + Math.abs(ly)) * halfSize;
+    }
+}
@@ -0,0 +1,115 @@
+package com.nazli.simsoft.physics;
+
+import com.nazli.simsoft.model.ShapeStore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits integration of the active set into one contiguous chunk per worker and runs the
+ * chunks on a dedicated {@link ForkJoinPool}. {@link #integrate} returns only after every
+ * chunk has finished, which is the barrier before collisions and broadcasting. Small worlds
+ * stay on the calling thread.
+ *
+ * Only integration runs in parallel; collision resolution and the broadcast that follow stay
+ * serial, so the step as a whole speeds up by much less than the worker count, and not at all
+ * when collisions dominate. Results are bit-identical to serial integration. Enable it only
+ * after measuring the tick on the target machine, e.g. with the benchmark profile.
+ */
+public class ParallelIntegrator implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final ChunkTask[] chunks;
+    private final RootTask root = new RootTask();
+
+    public ParallelIntegrator(int parallelism, int threshold) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.threshold = threshold;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("simulation-worker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+
+        // Tasks are reinitialized every tick instead of being allocated
+        this.chunks = new ChunkTask[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            chunks[i] = new ChunkTask();
+        }
+    }
+
+    public void integrate(ShapeStore store, double deltaTime, double panelWidth, double panelHeight) {
+        int count = store.getActiveCount();
+        if (count < threshold || chunks.length == 1) {
+            store.integrate(deltaTime, panelWidth, panelHeight);
+            return;
+        }
+
+        int chunkSize = (count + chunks.length - 1) / chunks.length;
+        for (int i = 0; i < chunks.length; i++) {
+            int from = Math.min(count, i * chunkSize);
+            int to = Math.min(count, from + chunkSize);
+            chunks[i].prepare(store, from, to, deltaTime, panelWidth, panelHeight);
+        }
+        root.reinitialize();
+        pool.invoke(root);
+    }
+
+    public int getParallelism() {
+        return chunks.length;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class RootTask extends RecursiveAction {
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(chunks);
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private ShapeStore store;
+        private int from;
+        private int to;
+        private double deltaTime;
+        private double panelWidth;
+        private double panelHeight;
+
+        void prepare(ShapeStore store, int from, int to, double deltaTime, double panelWidth, double panelHeight) {
+            reinitialize();
+            this.store = store;
+            this.from = from;
+            this.to = to;
+            this.deltaTime = deltaTime;
+            this.panelWidth = panelWidth;
+            this.panelHeight = panelHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (from < to) {
+                store.integrate(from, to, deltaTime, panelWidth, panelHeight);
+            }
+        }
+    }
+}
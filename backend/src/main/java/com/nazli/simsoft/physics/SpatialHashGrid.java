@@ -0,0 +1,164 @@
+package com.nazli.simsoft.physics;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid broad-phase. Bodies are bucketed by their center with a counting sort,
+ * so a rebuild is O(n) and needs no per-cell lists.
+ */
+public class SpatialHashGrid {
+
+    @FunctionalInterface
+    public interface PairVisitor {
+        void visit(int a, int b);
+    }
+
+    @FunctionalInterface
+    public interface ItemVisitor {
+        void visit(int index);
+    }
+
+    private final double cellSize;
+    private int columns;
+    private int rows;
+
+    private int[] cellStart = new int[1];
+    private int[] cellItems = new int[0];
+    private int[] itemCell = new int[0];
+    private int count;
+
+    public SpatialHashGrid(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.cellSize = cellSize;
+    }
+
+    public void build(double[] xs, double[] ys, int count, double width, double height) {
+        build(xs, ys, null, count, width, height);
+    }
+
+    /**
+     * Buckets only the bodies listed in {@code indices[0..count)}; visitors then see those
+     * body indices. A null array means bodies {@code 0..count)}.
+     */
+    public void build(double[] xs, double[] ys, int[] indices, int count, double width, double height) {
+        this.count = count;
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        int cells = columns * rows;
+
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+        if (itemCell.length < count) {
+            itemCell = new int[count];
+            cellItems = new int[count];
+        }
+
+        // Count bodies per cell
+        for (int k = 0; k < count; k++) {
+            int i = indices != null ? indices[k] : k;
+            int cell = cellOf(xs[i], ys[i]);
+            itemCell[k] = cell;
+            cellStart[cell + 1]++;
+        }
+
+        // Prefix sum turns counts into start offsets
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // Scatter, using the end offsets as cursors and walking backwards keeps the order stable
+        int[] cursor = cellStart;
+        for (int k = count - 1; k >= 0; k--) {
+            int cell = itemCell[k];
+            int slot = cursor[cell + 1] - 1;
+            cellItems[slot] = indices != null ? indices[k] : k;
+            cursor[cell + 1] = slot;
+        }
+        // cellStart[c + 1] now holds the start of cell c; shift it back into place
+        System.arraycopy(cellStart, 1, cellStart, 0, cells);
+        cellStart[cells] = count;
+    }
+
+    /**
+     * Visits every pair of bodies that share a cell or sit in adjacent cells, exactly once.
+     * Only the forward half of the 3x3 neighbourhood is scanned to avoid duplicates.
+     */
+    public void forEachCandidatePair(PairVisitor visitor) {
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                int cell = row * columns + col;
+                int start = cellStart[cell];
+                int end = cellStart[cell + 1];
+                if (start == end) continue;
+
+                for (int i = start; i < end; i++) {
+                    int a = cellItems[i];
+
+                    // Same cell
+                    for (int j = i + 1; j < end; j++) {
+                        visitor.visit(a, cellItems[j]);
+                    }
+
+                    // East, south-west, south, south-east
+                    if (col + 1 < columns) visitCell(a, cell + 1, visitor);
+                    if (row + 1 < rows) {
+                        int below = cell + columns;
+                        if (col > 0) visitCell(a, below - 1, visitor);
+                        visitCell(a, below, visitor);
+                        if (col + 1 < columns) visitCell(a, below + 1, visitor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every body whose center lies in a cell overlapping the given rectangle. The
+     * result is a superset of the bodies inside it; callers apply their own exact test.
+     */
+    public void forEachInRect(double minX, double minY, double maxX, double maxY, ItemVisitor visitor) {
+        int firstCol = clamp((int) Math.floor(minX / cellSize), columns);
+        int lastCol = clamp((int) Math.floor(maxX / cellSize), columns);
+        int firstRow = clamp((int) Math.floor(minY / cellSize), rows);
+        int lastRow = clamp((int) Math.floor(maxY / cellSize), rows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            // Cells of one row are contiguous, and so are their bodies
+            int from = cellStart[row * columns + firstCol];
+            int to = cellStart[row * columns + lastCol + 1];
+            for (int k = from; k < to; k++) {
+                visitor.visit(cellItems[k]);
+            }
+        }
+    }
+
+    private static int clamp(int index, int limit) {
+        return index < 0 ? 0 : (index >= limit ? limit - 1 : index);
+    }
+
+    private void visitCell(int a, int cell, PairVisitor visitor) {
+        for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++) {
+            visitor.visit(a, cellItems[k]);
+        }
+    }
+
+    private int cellOf(double x, double y) {
+        int col = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        if (col < 0) col = 0; else if (col >= columns) col = columns - 1;
+        if (row < 0) row = 0; else if (row >= rows) row = rows - 1;
+        return row * columns + col;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+}
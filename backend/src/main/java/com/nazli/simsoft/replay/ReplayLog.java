@@ -0,0 +1,247 @@
+package com.nazli.simsoft.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Append-only, memory-mapped log of everything that feeds a world: its seed and step, the
+ * commands it received with the tick they arrived at, and periodic checkpoints of its full
+ * state. Together they rebuild the world at any logged tick, see {@link Replayer}.
+ *
+ * Layout, big-endian: a {@value #HEADER_SIZE}-byte header (magic, version, flags, seed,
+ * step, last tick, checkpoint interval), then records of a type byte, the tick, a payload
+ * length and the payload. A record's type byte is written last, so a reader that meets a
+ * zero type has reached the end of what was committed.
+ *
+ * Not thread-safe; only the thread owning the world calls it. An I/O error disables the log
+ * rather than failing the simulation.
+ */
+public class ReplayLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayLog.class);
+
+    public static final byte INIT = 1;
+    public static final byte RESET = 2;
+    public static final byte PANEL = 3;
+    public static final byte CHECKPOINT = 4;
+    public static final byte ADD = 5;
+    public static final byte REMOVE = 6;
+    public static final byte UPDATE = 7;
+
+    // Which fields an UPDATE entry carries, one double each in this order
+    public static final int UPDATE_X = 1;
+    public static final int UPDATE_Y = 1 << 1;
+    public static final int UPDATE_ANGLE = 1 << 2;
+    public static final int UPDATE_VELOCITY_X = 1 << 3;
+    public static final int UPDATE_VELOCITY_Y = 1 << 4;
+    public static final int UPDATE_ANGULAR_VELOCITY = 1 << 5;
+    // Whether moving was given, and its value
+    public static final int UPDATE_MOVING = 1 << 6;
+    public static final int UPDATE_MOVING_VALUE = 1 << 7;
+
+    static final int MAGIC = 0x53494D4C;
+    // Bumped when the layout, or how a world replays it, changes
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+    static final int FLAG_COLLISIONS = 1;
+    static final int FLAGS_OFFSET = 8;
+    static final int SEED_OFFSET = 16;
+    static final int DELTA_TIME_OFFSET = 24;
+    static final int LAST_TICK_OFFSET = 32;
+    static final int CHECKPOINT_INTERVAL_OFFSET = 40;
+
+    // The file is mapped in windows of this size as it grows
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer window;
+    private long windowStart;
+    // End of the last complete record
+    private volatile long committed = HEADER_SIZE;
+    private boolean failed;
+
+    private ReplayLog(Path path, FileChannel channel, MappedByteBuffer header) {
+        this.path = path;
+        this.channel = channel;
+        this.header = header;
+    }
+
+    /**
+     * Starts a new log at {@code path}. An existing log there is kept as {@code <name>.previous}.
+     */
+    public static ReplayLog create(Path path, long seed, double deltaTime, boolean collisions,
+                                   int checkpointInterval) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (Files.exists(path)) {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".previous"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(FLAGS_OFFSET, collisions ? FLAG_COLLISIONS : 0);
+        header.putLong(SEED_OFFSET, seed);
+        header.putDouble(DELTA_TIME_OFFSET, deltaTime);
+        header.putLong(LAST_TICK_OFFSET, -1);
+        header.putInt(CHECKPOINT_INTERVAL_OFFSET, checkpointInterval);
+        return new ReplayLog(path, channel, header);
+    }
+
+    public void recordInit(long tick, int circles, int rectangles, int triangles) {
+        ByteBuffer out = begin(12);
+        if (out == null) return;
+        out.putInt(circles);
+        out.putInt(rectangles);
+        out.putInt(triangles);
+        commit(INIT, tick, 12);
+    }
+
+    public void recordAdd(long tick, int circles, int rectangles, int triangles) {
+        ByteBuffer out = begin(12);
+        if (out == null) return;
+        out.putInt(circles);
+        out.putInt(rectangles);
+        out.putInt(triangles);
+        commit(ADD, tick, 12);
+    }
+
+    public void recordRemove(long tick, int[] ids) {
+        int length = 4 + 4 * ids.length;
+        ByteBuffer out = begin(length);
+        if (out == null) return;
+        out.putInt(ids.length);
+        for (int id : ids) {
+            out.putInt(id);
+        }
+        commit(REMOVE, tick, length);
+    }
+
+    /**
+     * Appends shape updates of {@code length} bytes, filled in place by {@code writer}: a count,
+     * then per update an int id, a byte of {@code UPDATE_*} flags and the doubles they name.
+     */
+    public void recordUpdate(long tick, int length, Consumer<ByteBuffer> writer) {
+        ByteBuffer out = begin(length);
+        if (out == null) return;
+        int start = out.position();
+        writer.accept(out);
+        checkWritten("Update", out.position() - start, length);
+        commit(UPDATE, tick, length);
+    }
+
+    public void recordReset(long tick) {
+        if (begin(0) == null) return;
+        commit(RESET, tick, 0);
+    }
+
+    public void recordPanel(long tick, double width, double height) {
+        ByteBuffer out = begin(16);
+        if (out == null) return;
+        out.putDouble(width);
+        out.putDouble(height);
+        commit(PANEL, tick, 16);
+    }
+
+    /**
+     * Appends a checkpoint of {@code length} bytes, filled in place by {@code writer}.
+     */
+    public void recordCheckpoint(long tick, int length, Consumer<ByteBuffer> writer) {
+        ByteBuffer out = begin(length);
+        if (out == null) return;
+        int start = out.position();
+        writer.accept(out);
+        checkWritten("Checkpoint", out.position() - start, length);
+        commit(CHECKPOINT, tick, length);
+    }
+
+    /**
+     * Marks {@code tick} as simulated, so replays know how far the log reaches.
+     */
+    public void recordTick(long tick) {
+        if (!failed) {
+            header.putLong(LAST_TICK_OFFSET, tick);
+        }
+    }
+
+    // A writer that wrote more or less than it declared would leave the record misframed and
+    // everything after it unreadable
+    private static void checkWritten(String record, int written, int length) {
+        if (written != length) {
+            throw new IllegalStateException(record + " wrote " + written + " bytes, expected " + length);
+        }
+    }
+
+    // Makes room for one record and returns the window positioned at its payload
+    private ByteBuffer begin(int payloadLength) {
+        if (failed) return null;
+        long start = committed;
+        long end = start + RECORD_HEADER_SIZE + payloadLength;
+        try {
+            if (window == null || end > windowStart + window.capacity()) {
+                windowStart = start;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(WINDOW_SIZE, end - start));
+            }
+        } catch (IOException e) {
+            failed = true;
+            log.error("Replay log {} stopped recording", path, e);
+            return null;
+        }
+        int offset = (int) (start - windowStart);
+        window.position(offset + RECORD_HEADER_SIZE);
+        return window;
+    }
+
+    private void commit(byte type, long tick, int payloadLength) {
+        int offset = (int) (committed - windowStart);
+        window.putLong(offset + 1, tick);
+        window.putInt(offset + 9, payloadLength);
+        window.put(offset, type);
+        committed += RECORD_HEADER_SIZE + payloadLength;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Bytes of complete records, header included; readers in this process map up to here.
+     */
+    public long getCommitted() {
+        return committed;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Trims the file to the committed records and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        try {
+            channel.truncate(committed);
+        } finally {
+            channel.close();
+        }
+    }
+}
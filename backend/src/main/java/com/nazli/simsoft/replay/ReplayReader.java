@@ -0,0 +1,171 @@
+package com.nazli.simsoft.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a {@link ReplayLog}: the header and an index of its records. Payloads are mapped
+ * on demand, so opening even a multi-gigabyte log only touches the record headers.
+ */
+public class ReplayReader implements Closeable {
+
+    private final FileChannel channel;
+    private final long seed;
+    private final double deltaTime;
+    private final boolean collisions;
+    private final int checkpointInterval;
+    private final long lastTick;
+    private final List<Entry> entries;
+
+    private ReplayReader(FileChannel channel, ByteBuffer header, List<Entry> entries) {
+        this.channel = channel;
+        this.seed = header.getLong(ReplayLog.SEED_OFFSET);
+        this.deltaTime = header.getDouble(ReplayLog.DELTA_TIME_OFFSET);
+        this.collisions = (header.getInt(ReplayLog.FLAGS_OFFSET) & ReplayLog.FLAG_COLLISIONS) != 0;
+        this.checkpointInterval = header.getInt(ReplayLog.CHECKPOINT_INTERVAL_OFFSET);
+        this.lastTick = header.getLong(ReplayLog.LAST_TICK_OFFSET);
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public static ReplayReader open(Path path) throws IOException {
+        return open(path, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens a log, ignoring anything past {@code limit} bytes, such as a record the writer
+     * in this process has not committed yet.
+     */
+    public static ReplayReader open(Path path, long limit) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long end = Math.min(limit, channel.size());
+            ByteBuffer header = ByteBuffer.allocate(ReplayLog.HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != ReplayLog.MAGIC) {
+                throw new IOException(path + " is not a replay log");
+            }
+            if (header.getInt(4) != ReplayLog.VERSION) {
+                throw new IOException("Unsupported replay log version " + header.getInt(4));
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            ByteBuffer record = ByteBuffer.allocate(ReplayLog.RECORD_HEADER_SIZE);
+            long position = ReplayLog.HEADER_SIZE;
+            while (position + ReplayLog.RECORD_HEADER_SIZE <= end) {
+                record.clear();
+                readFully(channel, record, position);
+                byte type = record.get(0);
+                int length = record.getInt(9);
+                long payload = position + ReplayLog.RECORD_HEADER_SIZE;
+                if (type == 0 || payload + length > end) break;
+                entries.add(new Entry(type, record.getLong(1), payload, length));
+                position = payload + length;
+            }
+            return new ReplayReader(channel, header, entries);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Replay log ends inside a header");
+            }
+        }
+    }
+
+    /**
+     * The payload of a record, mapped read-only and positioned at its start.
+     */
+    public ByteBuffer payload(Entry entry) throws IOException {
+        if (entry.getLength() == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, entry.getOffset(), entry.getLength());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double getDeltaTime() {
+        return deltaTime;
+    }
+
+    public boolean isCollisions() {
+        return collisions;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * The last tick the writer simulated, or -1 if it never stepped.
+     */
+    public long getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * The first checkpointed tick, the earliest a world can be rebuilt at, or -1 if there is none.
+     */
+    public long getFirstTick() {
+        for (Entry entry : entries) {
+            if (entry.getType() == ReplayLog.CHECKPOINT) return entry.getTick();
+        }
+        return -1;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * One record: its type, the tick it was logged at and where its payload lies in the file.
+     */
+    public static final class Entry {
+
+        private final byte type;
+        private final long tick;
+        private final long offset;
+        private final int length;
+
+        Entry(byte type, long tick, long offset, int length) {
+            this.type = type;
+            this.tick = tick;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.nazli.simsoft.replay;
+
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.ReplayInfo;
+import com.nazli.simsoft.service.PhysicsSimulationService;
+import com.nazli.simsoft.service.SimulationWorld;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Records the default world to a {@link ReplayLog} when {@code simulation.replay.enabled}
+ * is set, and rebuilds past states from it for the replay API.
+ */
+@Service
+public class ReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayService.class);
+
+    @Autowired
+    private PhysicsSimulationService physicsSimulationService;
+
+    @Autowired
+    private SimulationSettings settings;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${simulation.replay.enabled:false}")
+    private boolean enabled;
+
+    @Value("${simulation.replay.file:replay/simulation.log}")
+    private Path file;
+
+    @Value("${simulation.replay.checkpoint-interval:600}")
+    private int checkpointInterval;
+
+    private ReplayLog replayLog;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) return;
+        SimulationWorld world = physicsSimulationService.getWorld();
+        replayLog = ReplayLog.create(file, world.getSeed(), 1.0 / settings.getPhysicsRate(),
+                settings.isCollisionsEnabled(), checkpointInterval);
+        world.attachReplayLog(replayLog, checkpointInterval);
+        log.info("Recording the simulation to {} (seed {}, checkpoint every {} ticks)",
+                file.toAbsolutePath(), world.getSeed(), checkpointInterval);
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (replayLog == null) return;
+        physicsSimulationService.getWorld().detachReplayLog();
+        replayLog.close();
+    }
+
+    public boolean isEnabled() {
+        return replayLog != null;
+    }
+
+    /**
+     * The default world as it was at {@code tick}, or at the latest logged tick if negative,
+     * rebuilt off to the side from the nearest checkpoint.
+     */
+    public SimulationWorld rebuild(long tick) {
+        try (ReplayReader reader = openReader()) {
+            return Replayer.rebuild(reader, tick < 0 ? reader.getLastTick() : tick, objectMapper, settings);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public ReplayInfo getInfo() {
+        try (ReplayReader reader = openReader()) {
+            return new ReplayInfo(file.toString(), reader.getSeed(), reader.getFirstTick(), reader.getLastTick(),
+                    reader.getCheckpointInterval(), reader.getEntries().size(), replayLog.getCommitted());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ReplayReader openReader() throws IOException {
+        if (replayLog == null) {
+            throw new IllegalStateException("Replay recording is disabled");
+        }
+        return ReplayReader.open(file, replayLog.getCommitted());
+    }
+}
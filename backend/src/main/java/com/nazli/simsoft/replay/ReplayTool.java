@@ -0,0 +1,45 @@
+package com.nazli.simsoft.replay;
+
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.service.SimulationWorld;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a log outside the server, for profiling a recorded run:
+ * {@code ReplayTool <log> [tick]} steps the world from the first checkpoint up to {@code tick}
+ * (default: the end of the log) as fast as it can, and reports the simulated rate.
+ */
+public final class ReplayTool {
+
+    private ReplayTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayTool <log> [tick]");
+            System.exit(2);
+        }
+        try (ReplayReader reader = ReplayReader.open(Path.of(args[0]))) {
+            long first = reader.getFirstTick();
+            long tick = args.length > 1 ? Long.parseLong(args[1]) : reader.getLastTick();
+            System.out.printf("seed %d, ticks %d..%d, %d records%n",
+                    reader.getSeed(), first, reader.getLastTick(), reader.getEntries().size());
+
+            SimulationSettings settings = new SimulationSettings();
+            settings.setKeyframeInterval(60);
+            // Start from the first checkpoint so the whole range is stepped, not skipped
+            long started = System.nanoTime();
+            SimulationWorld world = Replayer.rebuild(reader, first, tick, new ObjectMapper(), settings);
+            long elapsed = System.nanoTime() - started;
+
+            double seconds = elapsed / 1e9;
+            double simulated = (tick - first) * reader.getDeltaTime();
+            System.out.printf("rebuilt tick %d with %d shapes in %d ms: %.1f s simulated, %.0fx real time%n",
+                    world.getTickCount(), world.getShapeCount(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    simulated, seconds > 0 ? simulated / seconds : 0);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.nazli.simsoft.replay;
+
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.model.ShapeStore;
+import com.nazli.simsoft.service.PanelConfigService;
+import com.nazli.simsoft.service.SimulationWorld;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds a logged world at a given tick: restores the last checkpoint at or before it,
+ * then steps forward as fast as the CPU allows, applying the logged commands at their ticks.
+ */
+public final class Replayer {
+
+    private Replayer() {
+    }
+
+    /**
+     * A new, detached world in the state the logged one had after {@code tick} and the
+     * commands logged at it. {@code settings} supplies the encoding options; physics options
+     * come from the log.
+     */
+    public static SimulationWorld rebuild(ReplayReader reader, long tick, ObjectMapper objectMapper,
+                                          SimulationSettings settings) throws IOException {
+        return rebuild(reader, tick, tick, objectMapper, settings);
+    }
+
+    /**
+     * Like {@link #rebuild(ReplayReader, long, ObjectMapper, SimulationSettings)}, but starts
+     * from the last checkpoint at or before {@code from}, so every tick after it is stepped.
+     */
+    public static SimulationWorld rebuild(ReplayReader reader, long from, long tick, ObjectMapper objectMapper,
+                                          SimulationSettings settings) throws IOException {
+        if (tick > reader.getLastTick()) {
+            throw new IllegalArgumentException("Tick " + tick + " is past the end of the log at " + reader.getLastTick());
+        }
+        long start = Math.min(from, tick);
+        List<ReplayReader.Entry> entries = reader.getEntries();
+        int checkpoint = -1;
+        for (int i = 0; i < entries.size() && entries.get(i).getTick() <= start; i++) {
+            if (entries.get(i).getType() == ReplayLog.CHECKPOINT) checkpoint = i;
+        }
+        if (checkpoint < 0) {
+            throw new IllegalArgumentException("No checkpoint at or before tick " + start);
+        }
+
+        SimulationWorld world = new SimulationWorld(new PanelConfigService(), objectMapper,
+                replaySettings(reader, settings), null);
+        world.restoreCheckpoint(reader.payload(entries.get(checkpoint)));
+
+        double deltaTime = reader.getDeltaTime();
+        for (int i = checkpoint + 1; i < entries.size(); i++) {
+            ReplayReader.Entry entry = entries.get(i);
+            if (entry.getTick() > tick) break;
+            stepTo(world, entry.getTick(), deltaTime);
+            apply(world, entry.getType(), reader.payload(entry));
+        }
+        stepTo(world, tick, deltaTime);
+        world.publishSnapshot();
+        return world;
+    }
+
+    private static void stepTo(SimulationWorld world, long tick, double deltaTime) {
+        while (world.getTickCount() < tick) {
+            world.updateSimulation(deltaTime);
+        }
+    }
+
+    private static void apply(SimulationWorld world, byte type, ByteBuffer payload) {
+        switch (type) {
+            case ReplayLog.INIT:
+                world.initializeShapes(payload.getInt(), payload.getInt(), payload.getInt());
+                break;
+            case ReplayLog.ADD:
+                world.addShapes(payload.getInt(), payload.getInt(), payload.getInt());
+                break;
+            case ReplayLog.REMOVE: {
+                int[] ids = new int[payload.getInt()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = payload.getInt();
+                }
+                world.removeShapes(ids);
+                break;
+            }
+            case ReplayLog.UPDATE:
+                world.updateShapes(readUpdates(payload));
+                break;
+            case ReplayLog.RESET:
+                world.resetSimulation();
+                break;
+            case ReplayLog.PANEL:
+                world.getPanelConfig().setPanelSize(payload.getDouble(), payload.getDouble());
+                break;
+            default:
+                // Later checkpoints hold nothing the steps have not already reproduced
+                break;
+        }
+    }
+
+    /**
+     * Reads shape updates laid out as {@link ReplayLog#recordUpdate} writes them; the raw
+     * WebSocket update command uses the same layout.
+     */
+    public static List<ShapeDelta> readUpdates(ByteBuffer payload) {
+        int count = payload.getInt();
+        // Each update takes at least an id and its flags
+        if (count < 0 || count > payload.remaining() / 5) {
+            throw new BufferUnderflowException();
+        }
+        List<ShapeDelta> updates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ShapeDelta update = new ShapeDelta(ShapeStore.formatId(payload.getInt()));
+            int fields = payload.get() & 0xFF;
+            if ((fields & ReplayLog.UPDATE_X) != 0) update.setX(payload.getDouble());
+            if ((fields & ReplayLog.UPDATE_Y) != 0) update.setY(payload.getDouble());
+            if ((fields & ReplayLog.UPDATE_ANGLE) != 0) update.setAngle(payload.getDouble());
+            if ((fields & ReplayLog.UPDATE_VELOCITY_X) != 0) update.setVelocityX(payload.getDouble());
+            if ((fields & ReplayLog.UPDATE_VELOCITY_Y) != 0) update.setVelocityY(payload.getDouble());
+            if ((fields & ReplayLog.UPDATE_ANGULAR_VELOCITY) != 0) update.setAngularVelocity(payload.getDouble());
+            if ((fields & ReplayLog.UPDATE_MOVING) != 0) {
+                update.setMoving((fields & ReplayLog.UPDATE_MOVING_VALUE) != 0);
+            }
+            updates.add(update);
+        }
+        return updates;
+    }
+
+    private static SimulationSettings replaySettings(ReplayReader reader, SimulationSettings settings) {
+        SimulationSettings copy = new SimulationSettings();
+        copy.setCollisionsEnabled(reader.isCollisions());
+        copy.setSeed(reader.getSeed());
+        copy.setDeltaBroadcasts(settings.isDeltaBroadcasts());
+        copy.setKeyframeInterval(settings.getKeyframeInterval());
+        copy.setViewportMargin(settings.getViewportMargin());
+        copy.setDensityZoom(settings.getDensityZoom());
+        copy.setDensityTilePixels(settings.getDensityTilePixels());
+        return copy;
+    }
+}
@@ -0,0 +1,33 @@
+package com.nazli.simsoft.repository;
+
+import com.nazli.simsoft.model.WorldSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+
+public interface WorldSnapshotRepository extends JpaRepository<WorldSnapshot, String> {
+
+    /**
+     * Replaces a world's snapshot in one UPDATE, where {@code save} would first load the old
+     * state to merge into it. Returns 0 if the world has no snapshot yet.
+     */
+    @Modifying
+    @Transactional
+    @Query("update WorldSnapshot s set s.format = :format, s.tick = :tick, s.savedAt = :savedAt, s.state = :state"
+            + " where s.worldId = :worldId")
+    int overwrite(@Param("worldId") String worldId, @Param("format") int format, @Param("tick") long tick,
+                  @Param("savedAt") Instant savedAt, @Param("state") byte[] state);
+
+    /**
+     * Drops the snapshots of worlds that no longer exist, without loading their state.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from WorldSnapshot s where s.worldId not in :worldIds")
+    int deleteOthers(@Param("worldIds") Collection<String> worldIds);
+}
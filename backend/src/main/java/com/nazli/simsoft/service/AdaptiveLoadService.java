@@ -0,0 +1,170 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.broadcast.BroadcastDetail;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.LoadStatus;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Degrades broadcasts, never physics, when the simulation loop runs out of time. Every window
+ * the loop's busy time (physics steps plus broadcasts) is compared to the wall time; above the
+ * high-water mark, or as soon as steps have to be dropped, the level goes up one step:
+ * <ol>
+ *     <li>half the network rate</li>
+ *     <li>positions and velocities rounded to whole units, angles to 0.01 rad</li>
+ *     <li>small moving shapes on every fourth delta only; without delta broadcasts, where every
+ *     frame must carry every shape, a quarter of the network rate instead</li>
+ * </ol>
+ * Once utilization stays below the low-water mark for a few windows in a row the level comes
+ * back down one step at a time.
+ *
+ * The loop thread feeds and evaluates it; anyone may read the current detail.
+ */
+@Service
+public class AdaptiveLoadService {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveLoadService.class);
+    private static final int MAX_LEVEL = 3;
+
+    @Autowired
+    private SimulationSettings settings;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Value("${simulation.adaptive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.adaptive.window:1s}")
+    private Duration window;
+
+    @Value("${simulation.adaptive.high-water:0.8}")
+    private double highWater;
+
+    @Value("${simulation.adaptive.low-water:0.5}")
+    private double lowWater;
+
+    // Calm windows in a row before stepping down a level
+    @Value("${simulation.adaptive.recover-after:5}")
+    private int recoverAfter;
+
+    @Value("${simulation.adaptive.max-level:" + MAX_LEVEL + "}")
+    private int maxLevel;
+
+    // Moving shapes smaller than this are the first to be updated less often
+    @Value("${simulation.adaptive.small-size:30}")
+    private double smallSize;
+
+    private BroadcastDetail[] levels;
+    private volatile int level;
+    private volatile BroadcastDetail detail = BroadcastDetail.FULL;
+    private volatile double utilization;
+    private final AtomicLong levelChanges = new AtomicLong();
+
+    // Loop thread only
+    private long windowStart = System.nanoTime();
+    private long busyNanos;
+    private long droppedSteps;
+    private int calmWindows;
+
+    @PostConstruct
+    void init() {
+        if (maxLevel < 0 || maxLevel > MAX_LEVEL || !(lowWater < highWater)) {
+            throw new IllegalArgumentException("Adaptive max-level must be 0-" + MAX_LEVEL
+                    + " and low-water below high-water");
+        }
+        boolean delta = settings.isDeltaBroadcasts();
+        levels = new BroadcastDetail[] {
+                BroadcastDetail.FULL,
+                new BroadcastDetail(2, 0, 0, 0, 1),
+                new BroadcastDetail(2, 1, 100, 0, 1),
+                delta ? new BroadcastDetail(2, 1, 100, smallSize, 4) : new BroadcastDetail(4, 1, 100, 0, 1),
+        };
+        metrics.bindAdaptiveLoad(this);
+    }
+
+    public void recordStep(long nanos) {
+        busyNanos += nanos;
+    }
+
+    public void recordBroadcast(long nanos) {
+        busyNanos += nanos;
+    }
+
+    public void recordDroppedSteps(long count) {
+        droppedSteps += count;
+    }
+
+    /**
+     * Closes the current window once it is over and moves the level if needed. Cheap enough to
+     * call on every pass of the loop.
+     */
+    public void evaluate(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < window.toNanos()) return;
+
+        double busy = (double) busyNanos / elapsed;
+        boolean dropped = droppedSteps > 0;
+        utilization = busy;
+        windowStart = now;
+        busyNanos = 0;
+        droppedSteps = 0;
+        if (!enabled) return;
+
+        if ((busy > highWater || dropped) && level < maxLevel) {
+            calmWindows = 0;
+            setLevel(level + 1, busy, dropped ? "steps were dropped" : "load is high");
+        } else if (busy < lowWater && level > 0) {
+            if (++calmWindows >= recoverAfter) {
+                calmWindows = 0;
+                setLevel(level - 1, busy, "load has eased");
+            }
+        } else {
+            calmWindows = 0;
+        }
+    }
+
+    private void setLevel(int next, double busy, String reason) {
+        log.info("Broadcast detail level {} -> {}: {} ({}% of the loop busy)",
+                level, next, reason, Math.round(busy * 100));
+        level = next;
+        detail = levels[next];
+        levelChanges.incrementAndGet();
+    }
+
+    /**
+     * The detail broadcasts should use right now.
+     */
+    public BroadcastDetail getDetail() {
+        return detail;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public double getUtilization() {
+        return utilization;
+    }
+
+    public long getLevelChanges() {
+        return levelChanges.get();
+    }
+
+    public LoadStatus getStatus() {
+        BroadcastDetail current = detail;
+        return new LoadStatus(enabled, level, maxLevel, utilization,
+                settings.getNetworkRate() / current.getRateDivisor(), current.isQuantized(),
+                current.getSmallInterval() > 1 ? current.getSmallSize() : 0, current.getSmallInterval(),
+                levelChanges.get());
+    }
+}
@@ -7,7 +7,7 @@ import org.springframework.stereotype.Service;
 @Service
 public class PanelConfigService {
     
-    private PanelConfig currentConfig = new PanelConfig(Constants.PANEL_WIDTH, Constants.PANEL_HEIGHT);
+    private volatile PanelConfig currentConfig = new PanelConfig(Constants.PANEL_WIDTH, Constants.PANEL_HEIGHT);
     
     public PanelConfig getCurrentConfig() {
         return currentConfig;
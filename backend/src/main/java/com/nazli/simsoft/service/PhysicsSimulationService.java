@@ -1,120 +1,202 @@
 package com.nazli.simsoft.service;
 
-import com.nazli.simsoft.model.Shape;
+import com.nazli.simsoft.broadcast.EncodedFrame;
+import com.nazli.simsoft.broadcast.FrameEncodingInterceptor;
+import com.nazli.simsoft.broadcast.RawSessionRegistry;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import com.nazli.simsoft.physics.ParallelIntegrator;
 import com.nazli.simsoft.util.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * The default, global world behind {@code /app/*} and {@code /topic/shapes}.
+ */
 @Service
 public class PhysicsSimulationService {
 
+    private static final Logger log = LoggerFactory.getLogger(PhysicsSimulationService.class);
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
-    
+
     @Autowired
     private PanelConfigService panelConfigService;
 
-    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
-    private final AtomicInteger shapeIdCounter = new AtomicInteger(0);
-    
-    private long lastRotationTime = System.currentTimeMillis();
+    @Autowired
+    private FrameEncodingInterceptor frameEncodingInterceptor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
-    public void initializeShapes(int circles, int rectangles, int triangles) {
-        shapes.clear();
-        shapeIdCounter.set(0);
-        
-        // Create circles
-        for (int i = 0; i < circles; i++) {
-            createShape("circle");
+    @Autowired
+    private SimulationSettings settings;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Autowired
+    private ViewportService viewportService;
+
+    @Autowired
+    private RawSessionRegistry rawSessions;
+
+    @Autowired
+    private AdaptiveLoadService adaptiveLoadService;
+
+    private static final MimeType BINARY_FRAME_TYPE = MimeType.valueOf(Constants.BINARY_SHAPES_MIME_TYPE);
+    private static final MimeType BASE64_FRAME_TYPE = MimeType.valueOf(Constants.BINARY_SHAPES_MIME_TYPE + ";encoding=base64");
+
+    private SimulationWorld world;
+    private ParallelIntegrator parallelIntegrator;
+
+    @PostConstruct
+    void init() {
+        if (settings.isParallelIntegration()) {
+            int threads = settings.getParallelThreads() > 0
+                    ? settings.getParallelThreads()
+                    : Runtime.getRuntime().availableProcessors();
+            parallelIntegrator = new ParallelIntegrator(threads, settings.getParallelThreshold());
         }
-        
-        // Create rectangles
-        for (int i = 0; i < rectangles; i++) {
-            createShape("rectangle");
+        world = new SimulationWorld(panelConfigService, objectMapper, settings, parallelIntegrator);
+        metrics.bindWorld(world);
+        // Run again with simulation.seed set to this to reproduce the run
+        log.info("Simulation seed {}", world.getSeed());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (parallelIntegrator != null) {
+            parallelIntegrator.close();
+        }
+    }
+
+    /**
+     * Queues the command for the simulation loop; the next broadcast carries the new shapes.
+     */
+    public void initializeShapes(int circles, int rectangles, int triangles) {
+        world.submit(w -> w.initializeShapes(circles, rectangles, triangles));
+    }
+
+    /**
+     * Queued like {@link #initializeShapes}, but adds to the live world instead of rebuilding it.
+     */
+    public void addShapes(int circles, int rectangles, int triangles) {
+        world.submit(w -> w.addShapes(circles, rectangles, triangles));
+    }
+
+    public void removeShapes(int[] ids) {
+        world.submit(w -> w.removeShapes(ids));
+    }
+
+    public void updateShapes(List<ShapeDelta> updates) {
+        world.submit(w -> w.updateShapes(updates));
+    }
+
+    /**
+     * Advances the world by one fixed physics step. Driven by {@link SimulationLoop};
+     * broadcasting is separate, see {@link #broadcastShapes()}.
+     */
+    public void updateSimulation(double deltaTime) {
+        world.updateSimulation(deltaTime);
+    }
+
+    /**
+     * Broadcasts the current state to all clients, at the network rate chosen by {@link SimulationLoop}.
+     */
+    public void broadcastShapes() {
+        EncodedFrame frame = world.encodeBroadcast(adaptiveLoadService.getDetail());
+        messagingTemplate.convertAndSend(Constants.TOPIC_SHAPES, frame, frameHeaders(frame));
+        metrics.recordPayload(SimulationMetrics.JSON, frame.getLength());
+        broadcastBinaryFrames();
+        if (viewportService.hasViewports()) {
+            viewportService.broadcast(world);
         }
-        
-        // Create triangles
-        for (int i = 0; i < triangles; i++) {
-            createShape("triangle");
+    }
+
+    /**
+     * STOMP headers for a broadcast state frame: its encode time, for end-to-end latency.
+     */
+    static Map<String, Object> frameHeaders(EncodedFrame frame) {
+        return Map.of(Constants.FRAME_TIME_HEADER, Long.toString(frame.getTimestamp()));
+    }
+
+    // Addressing by session id lets anonymous sessions use /user destinations
+    static void sendToSession(SimpMessagingTemplate messagingTemplate, String sessionId, String destination, Object payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, destination, payload, accessor.getMessageHeaders());
+    }
+
+    private void broadcastBinaryFrames() {
+        boolean binary = frameEncodingInterceptor.hasBinarySubscribers();
+        boolean base64 = frameEncodingInterceptor.hasBase64Subscribers();
+        boolean raw = rawSessions.hasSessions();
+        if (!binary && !base64 && !raw) return;
+
+        // Encoded once for the STOMP topic and the raw endpoint alike
+        byte[] frame = world.encodeBinaryFrame();
+        if (binary || raw) {
+            metrics.recordPayload(SimulationMetrics.BINARY, frame.length);
         }
-        
-        // Start initial movement for 25% of shapes
-        startPartialMovement();
-    }
-
-    private void createShape(String type) {
-        String id = "shape_" + shapeIdCounter.getAndIncrement();
-        double panelWidth = panelConfigService.getWidth();
-        double panelHeight = panelConfigService.getHeight();
-        double x = Math.random() * (panelWidth - 50) + 25;
-        double y = Math.random() * (panelHeight - 50) + 25;
-        double size = Constants.MIN_SIZE + Math.random() * (Constants.MAX_SIZE - Constants.MIN_SIZE);
-        
-        Shape shape = new Shape(id, type, x, y, size);
-        shapes.put(id, shape);
-    }
-
-    @Scheduled(fixedRate = 16) // ~60 FPS
-    public void updateSimulation() {
-        // Update all moving shapes
-        for (Shape shape : shapes.values()) {
-            shape.updatePosition(Constants.DELTA_TIME, panelConfigService.getWidth(), panelConfigService.getHeight());
+        if (binary) {
+            sendEncoded(Constants.TOPIC_SHAPES_BINARY, frame, BINARY_FRAME_TYPE);
         }
-        
-        // Check if it's time to rotate which shapes are moving
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastRotationTime > Constants.ROTATION_INTERVAL) {
-            rotateMovingShapes();
-            lastRotationTime = currentTime;
+        if (raw) {
+            rawSessions.broadcast(frame);
         }
-        
-        // Broadcast current state to all clients
-        broadcastShapes();
-    }
-
-    private void rotateMovingShapes() {
-        List<Shape> allShapes = new ArrayList<>(shapes.values());
-        int movingCount = (int) (allShapes.size() * Constants.MOVING_PERCENTAGE);
-        
-        // Stop all shapes
-        allShapes.forEach(Shape::stopMoving);
-        
-        // Randomly select shapes to start moving
-        Collections.shuffle(allShapes);
-        for (int i = 0; i < movingCount && i < allShapes.size(); i++) {
-            allShapes.get(i).startMoving(Constants.MAX_VELOCITY);
+        if (base64) {
+            byte[] encoded = Base64.getEncoder().encode(frame);
+            sendEncoded(Constants.TOPIC_SHAPES_BASE64, encoded, BASE64_FRAME_TYPE);
+            metrics.recordPayload(SimulationMetrics.BASE64, encoded.length);
         }
     }
 
-    private void startPartialMovement() {
-        List<Shape> allShapes = new ArrayList<>(shapes.values());
-        int movingCount = (int) (allShapes.size() * Constants.MOVING_PERCENTAGE);
-        
-        // Randomly select shapes to start moving
-        Collections.shuffle(allShapes);
-        for (int i = 0; i < movingCount && i < allShapes.size(); i++) {
-            allShapes.get(i).startMoving(Constants.MAX_VELOCITY);
-        }
+    // Pre-encoded payloads skip the message converters entirely
+    private void sendEncoded(String destination, byte[] payload, MimeType contentType) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(contentType);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
     }
 
-    private void broadcastShapes() {
-        List<Shape> shapesList = new ArrayList<>(shapes.values());
-        messagingTemplate.convertAndSend(Constants.TOPIC_SHAPES, shapesList);
+    /**
+     * Full state as of the last broadcast, already serialized and shared with the REST API.
+     */
+    public EncodedFrame getSnapshotFrame() {
+        return world.getSnapshotFrame();
     }
 
-    public List<Shape> getCurrentShapes() {
-        return new ArrayList<>(shapes.values());
+    /**
+     * A client's resync request: the next broadcast sends the session the full state on
+     * {@code /user/queue/shapes}, see {@link SimulationWorld#replyWithSnapshot}.
+     */
+    public void requestSnapshot(String sessionId) {
+        if (sessionId == null) return;
+        world.submit(w -> w.replyWithSnapshot(frame ->
+                sendToSession(messagingTemplate, sessionId, Constants.QUEUE_SHAPES, frame)));
     }
 
     public void resetSimulation() {
-        shapes.clear();
-        shapeIdCounter.set(0);
-        lastRotationTime = System.currentTimeMillis();
+        world.submit(SimulationWorld::resetSimulation);
+    }
+
+    public SimulationWorld getWorld() {
+        return world;
     }
-} 
\ No newline at end of file
+}
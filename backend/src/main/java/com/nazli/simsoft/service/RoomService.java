@@ -0,0 +1,335 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.broadcast.BroadcastDetail;
+import com.nazli.simsoft.broadcast.EncodedFrame;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import com.nazli.simsoft.util.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Named simulation rooms, each an independent {@link SimulationWorld} with its own panel.
+ * All rooms share one bounded scheduler pool; a room nobody watches or commands is
+ * suspended after {@code simulation.rooms.suspend-after} and evicted after
+ * {@code simulation.rooms.evict-after}.
+ */
+@Service
+public class RoomService {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomService.class);
+    private static final Pattern ROOM_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final long HOUSEKEEPING_INTERVAL_SECONDS = 5;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SimulationSettings settings;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Autowired
+    private AdaptiveLoadService adaptiveLoadService;
+
+    @Value("${simulation.rooms.workers:4}")
+    private int workers;
+
+    @Value("${simulation.rooms.max:1000}")
+    private int maxRooms;
+
+    @Value("${simulation.rooms.suspend-after:60s}")
+    private Duration suspendAfter;
+
+    @Value("${simulation.rooms.evict-after:10m}")
+    private Duration evictAfter;
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    // sessionId -> subscriptionId -> roomId, to undo counts on unsubscribe and disconnect
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(workers, runnable -> {
+            Thread thread = new Thread(runnable, "room-worker-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.scheduleWithFixedDelay(this::housekeeping,
+                HOUSEKEEPING_INTERVAL_SECONDS, HOUSEKEEPING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        metrics.bindRooms(this);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the room's world, creating the room on first use and waking it if suspended.
+     */
+    public SimulationWorld getRoom(String roomId) {
+        return activate(roomId).world;
+    }
+
+    /**
+     * Queues a command for the room's world, creating the room on first use and waking it if
+     * suspended. The command is queued under the same check that eviction closes the room
+     * with, so it always reaches the world that is in the map and ticking, never one evicted
+     * in between.
+     */
+    public void submit(String roomId, Consumer<SimulationWorld> command) {
+        activate(roomId, command);
+    }
+
+    /**
+     * A client's resync request for a room: its next broadcast sends the session the full
+     * state on {@code /user/queue/rooms/{roomId}/shapes}.
+     */
+    public void requestSnapshot(String roomId, String sessionId) {
+        if (sessionId == null) {
+            activate(roomId);
+            return;
+        }
+        String queue = Constants.QUEUE_ROOMS_PREFIX + roomId + Constants.ROOM_SHAPES_SUFFIX;
+        submit(roomId, w -> w.replyWithSnapshot(frame ->
+                PhysicsSimulationService.sendToSession(messagingTemplate, sessionId, queue, frame)));
+    }
+
+    /**
+     * Creates a room from a persisted checkpoint, suspended: it is not scheduled until its
+     * first subscriber or command wakes it, and is evicted like any idle room if none comes.
+     * The state is restored before the room is in the map, so no worker or command ever sees
+     * the world half restored. Fails if the room is already live.
+     */
+    public SimulationWorld restoreRoom(String roomId, ByteBuffer state) {
+        checkRoomId(roomId);
+        return rooms.compute(roomId, (id, existing) -> {
+            if (existing != null) {
+                throw new IllegalStateException("Room " + id + " is already live");
+            }
+            Room restored = newRoom(id);
+            restored.world.restoreCheckpoint(state);
+            return restored;
+        }).world;
+    }
+
+    /**
+     * The worlds of all live rooms by room id, as of this call.
+     */
+    public Map<String, SimulationWorld> getWorlds() {
+        Map<String, SimulationWorld> worlds = new HashMap<>();
+        rooms.forEach((id, room) -> worlds.put(id, room.world));
+        return worlds;
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    public int getActiveRoomCount() {
+        return (int) rooms.values().stream().filter(Room::isScheduled).count();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String roomId = roomIdOf(accessor.getDestination());
+        if (roomId == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        try {
+            activate(roomId).subscribers.incrementAndGet();
+            subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                    .put(accessor.getSubscriptionId(), roomId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.debug("Ignoring subscription to room {}: {}", roomId, e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> session = accessor.getSessionId() != null ? subscriptions.get(accessor.getSessionId()) : null;
+        if (session != null && accessor.getSubscriptionId() != null) {
+            release(session.remove(accessor.getSubscriptionId()));
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> session = subscriptions.remove(event.getSessionId());
+        if (session != null) {
+            session.values().forEach(this::release);
+        }
+    }
+
+    private Room activate(String roomId) {
+        return activate(roomId, null);
+    }
+
+    private Room activate(String roomId, Consumer<SimulationWorld> command) {
+        checkRoomId(roomId);
+        while (true) {
+            Room room = rooms.computeIfAbsent(roomId, this::newRoom);
+            room.lastActivity = System.nanoTime();
+            // Evicted between the lookup and here: it is out of the map already, so go again
+            if (room.resume(command)) {
+                return room;
+            }
+        }
+    }
+
+    private static void checkRoomId(String roomId) {
+        if (roomId == null || !ROOM_ID.matcher(roomId).matches()) {
+            throw new IllegalArgumentException("Room id must be 1-64 letters, digits, '-' or '_'");
+        }
+    }
+
+    private Room newRoom(String roomId) {
+        if (rooms.size() >= maxRooms) {
+            throw new IllegalStateException("Room limit of " + maxRooms + " reached");
+        }
+        return new Room(roomId, new SimulationWorld(new PanelConfigService(), objectMapper, settings, null));
+    }
+
+    private void release(String roomId) {
+        Room room = roomId != null ? rooms.get(roomId) : null;
+        if (room != null) {
+            room.subscribers.decrementAndGet();
+            room.lastActivity = System.nanoTime();
+        }
+    }
+
+    void housekeeping() {
+        long now = System.nanoTime();
+        for (String roomId : rooms.keySet()) {
+            // Decided and removed in one step, so a room being activated is either kept or
+            // closed to it before it can resume
+            rooms.computeIfPresent(roomId, (id, room) -> room.housekeeping(now) ? null : room);
+        }
+    }
+
+    private static String roomIdOf(String destination) {
+        if (destination == null || !destination.startsWith(Constants.TOPIC_ROOMS_PREFIX)
+                || !destination.endsWith(Constants.ROOM_SHAPES_SUFFIX)) {
+            return null;
+        }
+        return destination.substring(Constants.TOPIC_ROOMS_PREFIX.length(),
+                destination.length() - Constants.ROOM_SHAPES_SUFFIX.length());
+    }
+
+    private final class Room {
+        private final String id;
+        private final String topic;
+        private final SimulationWorld world;
+        private final AtomicInteger subscribers = new AtomicInteger();
+        private final int stepsPerBroadcast;
+        private volatile long lastActivity = System.nanoTime();
+        private ScheduledFuture<?> task;
+        // Evicted and out of the map; never scheduled again
+        private boolean closed;
+        private int stepsSinceBroadcast;
+
+        Room(String id, SimulationWorld world) {
+            this.id = id;
+            this.topic = Constants.TOPIC_ROOMS_PREFIX + id + Constants.ROOM_SHAPES_SUFFIX;
+            this.world = world;
+            this.stepsPerBroadcast = Math.max(1, (int) Math.round(settings.getPhysicsRate() / settings.getNetworkRate()));
+        }
+
+        /**
+         * Queues {@code command}, if any, and schedules the room if it is not already; false,
+         * with nothing queued, if it has been evicted.
+         */
+        synchronized boolean resume(Consumer<SimulationWorld> command) {
+            if (closed) return false;
+            if (command != null) {
+                world.submit(command);
+            }
+            if (task != null) return true;
+            long periodNanos = Math.round(1_000_000_000L / settings.getPhysicsRate());
+            task = executor.scheduleAtFixedRate(this::tick, 0, periodNanos, TimeUnit.NANOSECONDS);
+            return true;
+        }
+
+        /**
+         * Suspends or closes the room if it has been idle long enough; true if it is closed and
+         * should leave the map.
+         */
+        synchronized boolean housekeeping(long now) {
+            if (subscribers.get() > 0) return false;
+            long idle = now - lastActivity;
+            if (idle >= evictAfter.toNanos()) {
+                suspend();
+                closed = true;
+            } else if (idle >= suspendAfter.toNanos()) {
+                suspend();
+            }
+            return closed;
+        }
+
+        synchronized void suspend() {
+            if (task == null) return;
+            task.cancel(false);
+            task = null;
+        }
+
+        synchronized boolean isScheduled() {
+            return task != null;
+        }
+
+        // Runs on a pool thread; scheduleAtFixedRate never overlaps runs of the same room, and
+        // the claim keeps a snapshot from copying the world during a tick still finishing after
+        // suspend(). A tick that finds the world claimed for a copy skips its turn
+        private void tick() {
+            if (!world.tryOwn()) return;
+            try {
+                world.updateSimulation(1.0 / settings.getPhysicsRate());
+                // Rooms share the machine with the default world, so they degrade with it
+                BroadcastDetail detail = adaptiveLoadService.getDetail();
+                if (++stepsSinceBroadcast >= stepsPerBroadcast * detail.getRateDivisor()) {
+                    stepsSinceBroadcast = 0;
+                    EncodedFrame frame = world.encodeBroadcast(detail);
+                    messagingTemplate.convertAndSend(topic, frame, PhysicsSimulationService.frameHeaders(frame));
+                }
+            } catch (RuntimeException e) {
+                // An exception would silently cancel the periodic task, so keep the room alive
+                log.error("Room {} tick failed", id, e);
+            } finally {
+                world.disown();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.nazli.simsoft.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import lombok.Data;
 import lombok.AllArgsConstructor;
@@ -8,28 +9,19 @@ import lombok.NoArgsConstructor;
 @Service
 public class ShapeService {
 
-    private ShapeConfiguration currentConfiguration = new ShapeConfiguration(0, 0, 0);
-
-    /*public ShapeConfiguration setShapes(int circles, int rects, int triangles) {
-        // Validate input parameters
-        if (circles < 0 || rects < 0 || triangles < 0) {
-            throw new IllegalArgumentException("Shape counts cannot be negative");
-        }
-        
-        // Update the current configuration
-        currentConfiguration = new ShapeConfiguration(circles, rects, triangles);
-        
-        return currentConfiguration;
-    } */
+    @Autowired
+    private PhysicsSimulationService physicsSimulationService;
 
+    /**
+     * Shapes of each type in the default world, as of its last broadcast.
+     */
     public ShapeConfiguration getCurrentShapes() {
-        return currentConfiguration;
+        SimulationWorld world = physicsSimulationService.getWorld();
+        return new ShapeConfiguration(world.getCircleCount(), world.getRectangleCount(), world.getTriangleCount());
     }
 
     public int getTotalShapes() {
-        return currentConfiguration.getCircles() + 
-               currentConfiguration.getRects() + 
-               currentConfiguration.getTriangles();
+        return physicsSimulationService.getWorld().getShapeCount();
     }
 
     @Data
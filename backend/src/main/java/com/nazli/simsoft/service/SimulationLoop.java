@@ -0,0 +1,235 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the simulation from its own high-priority thread. Physics advances in fixed steps
+ * fed by an accumulator of real elapsed time, so positions track the wall clock even when a
+ * tick runs late; broadcasting runs on its own, usually lower, rate.
+ */
+@Component
+public class SimulationLoop implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(SimulationLoop.class);
+    private static final long OVERRUN_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    @Autowired
+    private PhysicsSimulationService physicsSimulationService;
+
+    @Autowired
+    private SimulationSettings settings;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Autowired
+    private AdaptiveLoadService adaptiveLoadService;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong droppedSteps = new AtomicLong();
+    private volatile long lastStepNanos;
+    private volatile long maxStepNanos;
+    private volatile long lastBroadcastNanos;
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        // With no catch-up steps every frame would be clamped away and the world never step
+        if (settings.getPhysicsRate() <= 0 || settings.getNetworkRate() <= 0 || settings.getMaxCatchUpSteps() < 1) {
+            throw new IllegalArgumentException("Simulation and network rates must be positive and max catch-up steps at least 1");
+        }
+        metrics.bindLoop(this);
+        running = true;
+        // A platform thread of its own even when I/O runs on virtual threads, which would
+        // otherwise make the tick share carriers with socket writes
+        thread = new Thread(this::run, "simulation-loop");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        // The loop owns the default world while it runs: it steps it and runs its commands,
+        // and a snapshot taken meanwhile is copied between ticks. Only a checkpoint copy being
+        // made before the loop started can hold it, and only for a moment
+        SimulationWorld world = physicsSimulationService.getWorld();
+        while (!world.tryOwn()) {
+            if (!running) return;
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        try {
+            loop();
+        } finally {
+            world.disown();
+        }
+    }
+
+    private void loop() {
+        long stepNanos = Math.round(1_000_000_000L / settings.getPhysicsRate());
+        long broadcastNanos = Math.round(1_000_000_000L / settings.getNetworkRate());
+        double deltaTime = 1.0 / settings.getPhysicsRate();
+        long maxFrameNanos = stepNanos * settings.getMaxCatchUpSteps();
+
+        long previous = System.nanoTime();
+        long nextBroadcast = previous + broadcastNanos;
+        long lastOverrunLog = previous - OVERRUN_LOG_INTERVAL;
+        long accumulator = 0;
+        long broadcastSlot = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            long frame = now - previous;
+            previous = now;
+
+            // Never try to catch up more than maxCatchUpSteps at once, or a long GC pause
+            // turns into a spiral of ever later ticks
+            if (frame > maxFrameNanos) {
+                long dropped = (frame - maxFrameNanos) / stepNanos;
+                droppedSteps.addAndGet(dropped);
+                adaptiveLoadService.recordDroppedSteps(dropped);
+                frame = maxFrameNanos;
+            }
+            accumulator += frame;
+
+            while (accumulator >= stepNanos && running) {
+                long started = System.nanoTime();
+                try {
+                    physicsSimulationService.updateSimulation(deltaTime);
+                } catch (RuntimeException e) {
+                    log.error("Simulation step failed", e);
+                }
+                long elapsed = System.nanoTime() - started;
+                metrics.getTickTimer().record(elapsed, TimeUnit.NANOSECONDS);
+                adaptiveLoadService.recordStep(elapsed);
+                accumulator -= stepNanos;
+                steps.incrementAndGet();
+                lastStepNanos = elapsed;
+                if (elapsed > maxStepNanos) maxStepNanos = elapsed;
+
+                if (elapsed > stepNanos) {
+                    overruns.incrementAndGet();
+                    if (started - lastOverrunLog >= OVERRUN_LOG_INTERVAL) {
+                        lastOverrunLog = started;
+                        log.warn("Simulation step took {} us, budget is {} us ({} overruns so far)",
+                                TimeUnit.NANOSECONDS.toMicros(elapsed), TimeUnit.NANOSECONDS.toMicros(stepNanos),
+                                overruns.get());
+                    }
+                }
+            }
+
+            now = System.nanoTime();
+            if (now >= nextBroadcast) {
+                long finished = now;
+                // Under load only every n-th slot is used, see AdaptiveLoadService
+                if (broadcastSlot++ % adaptiveLoadService.getDetail().getRateDivisor() == 0) {
+                    try {
+                        physicsSimulationService.broadcastShapes();
+                    } catch (RuntimeException e) {
+                        log.error("Broadcast failed", e);
+                    }
+                    finished = System.nanoTime();
+                    lastBroadcastNanos = finished - now;
+                    metrics.getBroadcastTimer().record(lastBroadcastNanos, TimeUnit.NANOSECONDS);
+                    adaptiveLoadService.recordBroadcast(lastBroadcastNanos);
+                    if (broadcasts.incrementAndGet() == 1) {
+                        recordFirstBroadcast();
+                    }
+                }
+
+                // Skip missed broadcast slots rather than bursting to catch up
+                nextBroadcast += broadcastNanos;
+                if (nextBroadcast <= finished) {
+                    nextBroadcast = finished + broadcastNanos;
+                }
+            }
+
+            adaptiveLoadService.evaluate(System.nanoTime());
+
+            // Sleep until whichever comes first: the next physics step or the next broadcast
+            long nextStep = previous + (stepNanos - accumulator);
+            long wakeUp = Math.min(nextStep, nextBroadcast);
+            long sleep = wakeUp - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    // Measured from JVM start, so class loading and context refresh count as well
+    private void recordFirstBroadcast() {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        metrics.recordFirstBroadcast(uptime);
+        log.info("First broadcast {} ms after JVM start", uptime);
+    }
+
+    public long getSteps() {
+        return steps.get();
+    }
+
+    public long getBroadcasts() {
+        return broadcasts.get();
+    }
+
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    public long getDroppedSteps() {
+        return droppedSteps.get();
+    }
+
+    public long getLastStepNanos() {
+        return lastStepNanos;
+    }
+
+    public long getMaxStepNanos() {
+        return maxStepNanos;
+    }
+
+    public long getLastBroadcastNanos() {
+        return lastBroadcastNanos;
+    }
+
+    public double getPhysicsRate() {
+        return settings.getPhysicsRate();
+    }
+
+    public double getNetworkRate() {
+        return settings.getNetworkRate();
+    }
+}
@@ -0,0 +1,831 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.broadcast.BinaryFrameEncoder;
+import com.nazli.simsoft.broadcast.BroadcastDetail;
+import com.nazli.simsoft.broadcast.DeltaEncoder;
+import com.nazli.simsoft.broadcast.EncodedFrame;
+import com.nazli.simsoft.broadcast.ShapeJsonWriter;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.PanelConfig;
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.dto.StateFrame;
+import com.nazli.simsoft.dto.Viewport;
+import com.nazli.simsoft.dto.ViewportFrame;
+import com.nazli.simsoft.model.Shape;
+import com.nazli.simsoft.model.ShapeStore;
+import com.nazli.simsoft.physics.CollisionResolver;
+import com.nazli.simsoft.physics.ParallelIntegrator;
+import com.nazli.simsoft.physics.SpatialHashGrid;
+import com.nazli.simsoft.replay.ReplayLog;
+import com.nazli.simsoft.util.Constants;
+import com.nazli.simsoft.util.SeededRandom;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One independent simulation: its shapes, its panel and its encoded frames. The default world
+ * lives in {@link PhysicsSimulationService}; every room in {@link RoomService} has its own.
+ *
+ * One thread owns a world and steps it: the simulation loop, or a room's worker, which
+ * {@link #tryOwn claims} it for as long as it steps it. Other threads {@link #submit}
+ * commands, which the owner runs between ticks, and read the {@link Snapshot} the owner
+ * publishes with each broadcast through a single volatile reference, so reads are wait-free
+ * and always see one whole frame. Nothing else touches the arrays, so the tick takes no
+ * locks; even {@link #captureCheckpoint} has the owner make its copy.
+ *
+ * Given its seed, a world is a deterministic function of its commands and the tick each one
+ * arrived at, which is what a {@link ReplayLog} records.
+ */
+public class SimulationWorld {
+
+    // Bumped whenever the checkpoint layout changes, so stale persisted snapshots are ignored
+    public static final int CHECKPOINT_FORMAT = 1;
+    // How long a checkpoint waits on the owner before checking whether it has let go
+    private static final long CHECKPOINT_POLL_MILLIS = 100;
+    // While broadcasts are rounded and someone reads snapshots, an exact one every this many broadcasts
+    private static final int SNAPSHOT_REFRESH_INTERVAL = 4;
+
+    private final PanelConfigService panelConfig;
+    private final ObjectMapper objectMapper;
+    private final ParallelIntegrator parallelIntegrator;
+    private final boolean collisionsEnabled;
+    private final boolean deltaBroadcasts;
+    private final double viewportMargin;
+    private final double densityZoom;
+    private final double densityTilePixels;
+
+    private final ShapeStore shapes = new ShapeStore();
+    private final CollisionResolver collisionResolver = new CollisionResolver();
+    private final BinaryFrameEncoder binaryFrameEncoder = new BinaryFrameEncoder();
+    private final DeltaEncoder deltaEncoder;
+    private final ShapeJsonWriter jsonWriter;
+    private final long seed;
+    private final SeededRandom random;
+    private final SpatialHashGrid viewIndex = new SpatialHashGrid(Constants.COLLISION_CELL_SIZE);
+    private long viewIndexTick = -1;
+    private volatile long tickCount = 0;
+    private int shapeIdCounter = 0;
+    // A permutation of the body indices, kept between rotations for partial Fisher-Yates
+    private int[] selection = new int[0];
+    private int selectionSize;
+
+    // Commands from other threads, run by the owner before its next step
+    private final Queue<Consumer<SimulationWorld>> commands = new ConcurrentLinkedQueue<>();
+    // Held by the thread stepping the world, see tryOwn
+    private final AtomicBoolean owned = new AtomicBoolean();
+    // The last published state; replaced, never modified
+    private volatile Snapshot published;
+    // A reader found the published frame behind the broadcasts
+    private volatile boolean snapshotWanted;
+    // Someone read the published frame since the last exact one was encoded
+    private volatile boolean snapshotRead;
+    private int broadcastsSinceSnapshot;
+    // Resync replies waiting for the next broadcast; owner only
+    private final List<Consumer<EncodedFrame>> snapshotReplies = new ArrayList<>();
+
+    // Simulated seconds, advanced by the fixed step rather than read from the wall clock
+    private double simulationTime = 0;
+    private double lastRotationTime = 0;
+
+    private Timer rotationTimer;
+    private final Runnable rotation = this::rotateMovingShapes;
+
+    private ReplayLog replayLog;
+    private int checkpointInterval;
+    // The panel the world last stepped or spawned in, as the replay log knows it
+    private double panelWidth;
+    private double panelHeight;
+
+    public SimulationWorld(PanelConfigService panelConfig, ObjectMapper objectMapper,
+                           SimulationSettings settings, ParallelIntegrator parallelIntegrator) {
+        this.panelConfig = panelConfig;
+        this.objectMapper = objectMapper;
+        this.parallelIntegrator = parallelIntegrator;
+        this.collisionsEnabled = settings.isCollisionsEnabled();
+        this.deltaBroadcasts = settings.isDeltaBroadcasts();
+        this.deltaEncoder = new DeltaEncoder(settings.getKeyframeInterval());
+        this.jsonWriter = new ShapeJsonWriter(objectMapper.getFactory());
+        this.viewportMargin = settings.getViewportMargin();
+        this.densityZoom = settings.getDensityZoom();
+        this.densityTilePixels = settings.getDensityTilePixels();
+        this.seed = settings.getSeed() != 0 ? settings.getSeed() : ThreadLocalRandom.current().nextLong();
+        this.random = new SeededRandom(seed);
+        this.panelWidth = panelConfig.getWidth();
+        this.panelHeight = panelConfig.getHeight();
+        publishSnapshot();
+    }
+
+    /**
+     * Claims the world for the calling thread; false if another thread holds it. A driver
+     * holds the claim while it steps the world, for each tick or for as long as it runs,
+     * and releases it with {@link #disown}. Everything below that changes or reads the live
+     * state is for the holder only, or for a world nothing steps yet, such as one being
+     * restored at startup or rebuilt from a replay log.
+     */
+    public boolean tryOwn() {
+        return owned.compareAndSet(false, true);
+    }
+
+    public void disown() {
+        owned.set(false);
+    }
+
+    /**
+     * Queues a command for the owning thread, which runs it before its next step.
+     */
+    public void submit(Consumer<SimulationWorld> command) {
+        commands.add(command);
+    }
+
+    /**
+     * Runs the submitted commands now. The owner calls this; {@link #updateSimulation} does
+     * it first thing.
+     */
+    public void runCommands() {
+        Consumer<SimulationWorld> command;
+        while ((command = commands.poll()) != null) {
+            command.accept(this);
+        }
+    }
+
+    public void initializeShapes(int circles, int rectangles, int triangles) {
+        usePanel(panelConfig.getCurrentConfig());
+        if (replayLog != null) {
+            replayLog.recordInit(tickCount, circles, rectangles, triangles);
+        }
+        shapes.clear();
+        shapeIdCounter = 0;
+
+        // Create circles
+        for (int i = 0; i < circles; i++) {
+            createShape(ShapeStore.CIRCLE);
+        }
+
+        // Create rectangles
+        for (int i = 0; i < rectangles; i++) {
+            createShape(ShapeStore.RECTANGLE);
+        }
+
+        // Create triangles
+        for (int i = 0; i < triangles; i++) {
+            createShape(ShapeStore.TRIANGLE);
+        }
+
+        // Start initial movement for 25% of shapes
+        startPartialMovement();
+        deltaEncoder.invalidate();
+        viewIndexTick = -1;
+    }
+
+    private int createShape(byte type) {
+        int id = shapeIdCounter++;
+        double x = random.nextDouble() * (panelWidth - 50) + 25;
+        double y = random.nextDouble() * (panelHeight - 50) + 25;
+        double size = Constants.MIN_SIZE + random.nextDouble() * (Constants.MAX_SIZE - Constants.MIN_SIZE);
+        byte color = (byte) random.nextInt(Constants.SHAPE_COLORS.length);
+
+        return shapes.add(id, type, x, y, size, color);
+    }
+
+    /**
+     * Adds shapes to the live world, with new ids and the usual share of them moving. Costs
+     * as much as the shapes added; in delta mode the next delta carries just them.
+     */
+    public void addShapes(int circles, int rectangles, int triangles) {
+        usePanel(panelConfig.getCurrentConfig());
+        if (replayLog != null) {
+            replayLog.recordAdd(tickCount, circles, rectangles, triangles);
+        }
+        int first = shapes.size();
+        for (int i = 0; i < circles; i++) {
+            deltaEncoder.added(createShape(ShapeStore.CIRCLE));
+        }
+        for (int i = 0; i < rectangles; i++) {
+            deltaEncoder.added(createShape(ShapeStore.RECTANGLE));
+        }
+        for (int i = 0; i < triangles; i++) {
+            deltaEncoder.added(createShape(ShapeStore.TRIANGLE));
+        }
+        // Selection sampling: each new shape is picked with the odds of filling the remaining
+        // places from the remaining shapes, so movingCount of them start, drawn from the
+        // world's random like the rest of its state and without touching the rotation order
+        int count = shapes.size();
+        int needed = (int) ((count - first) * Constants.MOVING_PERCENTAGE);
+        for (int i = first; i < count && needed > 0; i++) {
+            if (random.nextInt(count - i) < needed) {
+                shapes.startMoving(i, Constants.MAX_VELOCITY, random);
+                needed--;
+            }
+        }
+        viewIndexTick = -1;
+    }
+
+    /**
+     * Removes the shapes with these ids; ids not in the world are ignored.
+     */
+    public void removeShapes(int[] ids) {
+        if (replayLog != null) {
+            replayLog.recordRemove(tickCount, ids);
+        }
+        for (int id : ids) {
+            int index = shapes.indexOf(id);
+            if (index < 0) continue;
+            int last = shapes.remove(index);
+            deltaEncoder.removed(index, last, id);
+        }
+        viewIndexTick = -1;
+    }
+
+    /**
+     * Sets the given fields of existing shapes; unknown ids and null fields are ignored.
+     * Positions are kept inside the panel. {@code moving} false stops a shape, true starts
+     * it with random velocities unless some are given; otherwise given velocities decide
+     * whether it moves.
+     */
+    public void updateShapes(List<ShapeDelta> updates) {
+        usePanel(panelConfig.getCurrentConfig());
+        if (replayLog != null) {
+            recordUpdates(updates);
+        }
+        double[] x = shapes.getX();
+        double[] y = shapes.getY();
+        double[] angle = shapes.getAngle();
+        double[] velocityX = shapes.getVelocityX();
+        double[] velocityY = shapes.getVelocityY();
+        double[] angularVelocity = shapes.getAngularVelocity();
+        for (ShapeDelta update : updates) {
+            int i = shapes.indexOf(ShapeStore.parseId(update.getId()));
+            if (i < 0) continue;
+            if (update.getX() != null) x[i] = Math.max(0, Math.min(panelWidth, update.getX()));
+            if (update.getY() != null) y[i] = Math.max(0, Math.min(panelHeight, update.getY()));
+            if (update.getAngle() != null) angle[i] = update.getAngle();
+
+            boolean velocityGiven = update.getVelocityX() != null || update.getVelocityY() != null
+                    || update.getAngularVelocity() != null;
+            if (Boolean.FALSE.equals(update.getMoving())) {
+                shapes.stopMoving(i);
+            } else if (velocityGiven) {
+                shapes.setMotion(i,
+                        update.getVelocityX() != null ? update.getVelocityX() : velocityX[i],
+                        update.getVelocityY() != null ? update.getVelocityY() : velocityY[i],
+                        update.getAngularVelocity() != null ? update.getAngularVelocity() : angularVelocity[i]);
+            } else if (Boolean.TRUE.equals(update.getMoving())) {
+                shapes.startMoving(i, Constants.MAX_VELOCITY, random);
+            }
+            shapes.markChanged(i);
+        }
+        viewIndexTick = -1;
+    }
+
+    private void recordUpdates(List<ShapeDelta> updates) {
+        int length = 4;
+        for (ShapeDelta update : updates) {
+            length += 4 + 1 + 8 * (count(update.getX()) + count(update.getY()) + count(update.getAngle())
+                    + count(update.getVelocityX()) + count(update.getVelocityY()) + count(update.getAngularVelocity()));
+        }
+        replayLog.recordUpdate(tickCount, length, out -> {
+            out.putInt(updates.size());
+            for (ShapeDelta update : updates) {
+                out.putInt(ShapeStore.parseId(update.getId()));
+                int fields = (update.getX() != null ? ReplayLog.UPDATE_X : 0)
+                        | (update.getY() != null ? ReplayLog.UPDATE_Y : 0)
+                        | (update.getAngle() != null ? ReplayLog.UPDATE_ANGLE : 0)
+                        | (update.getVelocityX() != null ? ReplayLog.UPDATE_VELOCITY_X : 0)
+                        | (update.getVelocityY() != null ? ReplayLog.UPDATE_VELOCITY_Y : 0)
+                        | (update.getAngularVelocity() != null ? ReplayLog.UPDATE_ANGULAR_VELOCITY : 0)
+                        | (update.getMoving() != null ? ReplayLog.UPDATE_MOVING : 0)
+                        | (Boolean.TRUE.equals(update.getMoving()) ? ReplayLog.UPDATE_MOVING_VALUE : 0);
+                out.put((byte) fields);
+                if (update.getX() != null) out.putDouble(update.getX());
+                if (update.getY() != null) out.putDouble(update.getY());
+                if (update.getAngle() != null) out.putDouble(update.getAngle());
+                if (update.getVelocityX() != null) out.putDouble(update.getVelocityX());
+                if (update.getVelocityY() != null) out.putDouble(update.getVelocityY());
+                if (update.getAngularVelocity() != null) out.putDouble(update.getAngularVelocity());
+            }
+        });
+    }
+
+    private static int count(Double field) {
+        return field != null ? 1 : 0;
+    }
+
+    /**
+     * Advances the world by one fixed physics step.
+     */
+    public void updateSimulation(double deltaTime) {
+        if (!commands.isEmpty()) {
+            runCommands();
+        }
+        usePanel(panelConfig.getCurrentConfig());
+        tickCount++;
+        simulationTime += deltaTime;
+
+        // Update all moving shapes
+        if (parallelIntegrator != null) {
+            parallelIntegrator.integrate(shapes, deltaTime, panelWidth, panelHeight);
+        } else {
+            shapes.integrate(deltaTime, panelWidth, panelHeight);
+        }
+
+        // Resolve shape-to-shape contacts
+        if (collisionsEnabled) {
+            collisionResolver.resolve(shapes, panelWidth, panelHeight);
+        }
+
+        // Check if it's time to rotate which shapes are moving
+        if ((simulationTime - lastRotationTime) * 1000 > Constants.ROTATION_INTERVAL) {
+            if (rotationTimer != null) {
+                rotationTimer.record(rotation);
+            } else {
+                rotateMovingShapes();
+            }
+            lastRotationTime = simulationTime;
+        }
+
+        if (replayLog != null) {
+            if (tickCount % checkpointInterval == 0) {
+                recordCheckpoint();
+            }
+            replayLog.recordTick(tickCount);
+        }
+    }
+
+    // Read the panel once per command or step, so a resize from another thread lands
+    // between ticks, where the replay log puts it
+    private void usePanel(PanelConfig panel) {
+        if (panel.getWidth() == panelWidth && panel.getHeight() == panelHeight) return;
+        panelWidth = panel.getWidth();
+        panelHeight = panel.getHeight();
+        if (replayLog != null) {
+            replayLog.recordPanel(tickCount, panelWidth, panelHeight);
+        }
+    }
+
+    void rotateMovingShapes() {
+        // Stop all shapes
+        shapes.stopAll();
+
+        // Randomly select shapes to start moving
+        startPartialMovement();
+    }
+
+    private void startPartialMovement() {
+        int count = shapes.size();
+        int movingCount = (int) (count * Constants.MOVING_PERCENTAGE);
+
+        // Randomly select shapes to start moving: a partial Fisher-Yates draws movingCount
+        // distinct indices with movingCount swaps. Any permutation is a valid starting point,
+        // so the array is only reset when the number of shapes changes
+        if (selectionSize != count) {
+            if (selection.length < count) {
+                selection = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                selection[i] = i;
+            }
+            selectionSize = count;
+        }
+        for (int i = 0; i < movingCount; i++) {
+            int j = i + random.nextInt(count - i);
+            int swap = selection[i];
+            selection[i] = selection[j];
+            selection[j] = swap;
+            shapes.startMoving(selection[i], Constants.MAX_VELOCITY, random);
+        }
+    }
+
+    public EncodedFrame encodeBroadcast() {
+        return encodeBroadcast(BroadcastDetail.FULL);
+    }
+
+    /**
+     * The frame to broadcast now: the full state, or the next keyframe/delta in delta mode,
+     * at the given level of detail. Also publishes the state for readers on other threads,
+     * always at full detail, and answers the resync requests queued since the last broadcast.
+     */
+    public EncodedFrame encodeBroadcast(BroadcastDetail detail) {
+        boolean replies = !snapshotReplies.isEmpty();
+        if (!deltaBroadcasts) {
+            EncodedFrame full = null;
+            broadcastsSinceSnapshot++;
+            if (!detail.isQuantized() || snapshotWanted || replies
+                    || (snapshotRead && broadcastsSinceSnapshot >= SNAPSHOT_REFRESH_INTERVAL)) {
+                snapshotWanted = false;
+                snapshotRead = false;
+                broadcastsSinceSnapshot = 0;
+                full = new EncodedFrame(jsonWriter.write(shapes), tickCount);
+            }
+            // Rounded frames are only broadcast. The exact one is encoded when asked for, and
+            // every few broadcasts while it is being read, so readers never fall far behind
+            publish(full != null ? full : published.frame);
+            reply(full);
+            return detail.isQuantized() ? new EncodedFrame(jsonWriter.write(shapes, detail), tickCount) : full;
+        }
+
+        StateFrame state = deltaEncoder.encode(shapes, detail);
+        EncodedFrame frame = encode(state);
+        EncodedFrame keyframe = null;
+        if (StateFrame.KEYFRAME.equals(state.getType())) {
+            keyframe = frame;
+        } else if (snapshotWanted || replies) {
+            // Same sequence number as this delta, so a client can carry on from either
+            snapshotWanted = false;
+            keyframe = encode(deltaEncoder.keyframe(shapes));
+        }
+        publish(keyframe != null ? keyframe : published.frame);
+        reply(keyframe);
+        return frame;
+    }
+
+    private void reply(EncodedFrame keyframe) {
+        if (snapshotReplies.isEmpty()) return;
+        for (Consumer<EncodedFrame> reply : snapshotReplies) {
+            reply.accept(keyframe);
+        }
+        snapshotReplies.clear();
+    }
+
+    /**
+     * Encodes the full state and publishes it, for a world that is not being broadcast,
+     * such as one rebuilt from a replay log.
+     */
+    public void publishSnapshot() {
+        publish(deltaBroadcasts
+                ? encode(deltaEncoder.keyframe(shapes))
+                : new EncodedFrame(jsonWriter.write(shapes), tickCount));
+    }
+
+    private void publish(EncodedFrame frame) {
+        published = new Snapshot(frame, tickCount, shapes.size(), shapes.getActiveCount(),
+                shapes.getTypeCount(ShapeStore.CIRCLE), shapes.getTypeCount(ShapeStore.RECTANGLE),
+                shapes.getTypeCount(ShapeStore.TRIANGLE));
+    }
+
+    /**
+     * The binary frame for the current state; for the owning thread, after {@link #encodeBroadcast}.
+     */
+    public byte[] encodeBinaryFrame() {
+        return binaryFrameEncoder.encode(shapes, tickCount, panelWidth, panelHeight);
+    }
+
+    private EncodedFrame encode(Object payload) {
+        try {
+            return new EncodedFrame(objectMapper.writeValueAsBytes(payload), tickCount);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode shape frame", e);
+        }
+    }
+
+    /**
+     * The part of the world inside a viewport plus the margin: the shapes themselves, or
+     * density tiles when zoomed out past the density threshold. The spatial index behind it
+     * is rebuilt at most once per tick, however many viewports ask. For the owning thread,
+     * after {@link #encodeBroadcast}.
+     */
+    public ViewportFrame viewportFrame(Viewport viewport) {
+        // The panel the world stepped in; one set since then only applies from the next tick
+        if (viewIndexTick != tickCount) {
+            viewIndex.build(shapes.getX(), shapes.getY(), shapes.size(), panelWidth, panelHeight);
+            viewIndexTick = tickCount;
+        }
+
+        double minX = Math.max(0, viewport.getX() - viewportMargin);
+        double minY = Math.max(0, viewport.getY() - viewportMargin);
+        double maxX = Math.min(panelWidth, viewport.getX() + viewport.getWidth() + viewportMargin);
+        double maxY = Math.min(panelHeight, viewport.getY() + viewport.getHeight() + viewportMargin);
+        double width = Math.max(0, maxX - minX);
+        double height = Math.max(0, maxY - minY);
+        double[] x = shapes.getX();
+        double[] y = shapes.getY();
+        double[] size = shapes.getSize();
+
+        // Bodies are bucketed by center, so widen the query by the largest possible half-extent
+        double reach = Constants.MAX_SIZE * Math.sqrt(2) / 2;
+
+        if (viewport.getZoom() < densityZoom) {
+            double tileSize = densityTilePixels / viewport.getZoom();
+            int columns = Math.max(1, (int) Math.ceil(width / tileSize));
+            int rows = Math.max(1, (int) Math.ceil(height / tileSize));
+            int[] counts = new int[columns * rows];
+            viewIndex.forEachInRect(minX - reach, minY - reach, maxX + reach, maxY + reach, i -> {
+                double extent = size[i] * Math.sqrt(2) / 2;
+                if (x[i] + extent < minX || x[i] - extent > maxX || y[i] + extent < minY || y[i] - extent > maxY) return;
+                // Count each shape once, in the tile holding its center, clamped into the area
+                int column = Math.max(0, Math.min(columns - 1, (int) ((x[i] - minX) / tileSize)));
+                int row = Math.max(0, Math.min(rows - 1, (int) ((y[i] - minY) / tileSize)));
+                counts[row * columns + column]++;
+            });
+            return ViewportFrame.density(tickCount, minX, minY, width, height, tileSize, columns, rows, counts);
+        }
+
+        List<Shape> visible = new ArrayList<>();
+        viewIndex.forEachInRect(minX - reach, minY - reach, maxX + reach, maxY + reach, i -> {
+            double extent = size[i] * Math.sqrt(2) / 2;
+            if (x[i] + extent >= minX && x[i] - extent <= maxX && y[i] + extent >= minY && y[i] - extent <= maxY) {
+                visible.add(shapes.toShape(i));
+            }
+        });
+        return ViewportFrame.shapes(tickCount, minX, minY, width, height, visible);
+    }
+
+    /**
+     * Builds shape DTOs from the live arrays; for tests and benchmarks driving the world
+     * themselves.
+     */
+    List<Shape> getCurrentShapes() {
+        return shapes.toShapes();
+    }
+
+    /**
+     * The last published full state, already serialized: the plain shape list, or a keyframe
+     * in delta mode so clients can resync their sequence numbers from it. Wait-free. In delta
+     * mode, or while broadcasts are rounded, it may trail the broadcasts; asking for it gets a
+     * current one published with the next broadcast, and while broadcasts are rounded a
+     * reader keeps getting one every {@value #SNAPSHOT_REFRESH_INTERVAL} broadcasts.
+     */
+    public EncodedFrame getSnapshotFrame() {
+        Snapshot snapshot = published;
+        if (snapshot.frame.getTick() != snapshot.tick) {
+            snapshotWanted = true;
+        }
+        if (!snapshotRead) {
+            snapshotRead = true;
+        }
+        return snapshot.frame;
+    }
+
+    /**
+     * A client's resync request, for the owner, as a command: the next broadcast calls
+     * {@code reply} with the full state as of that broadcast, a keyframe with its sequence
+     * number in delta mode, so the client carries on with the deltas that follow. The reply
+     * goes to that client only; other subscribers keep getting deltas, so one client asking
+     * often cannot turn delta broadcasting back into keyframes.
+     */
+    public void replyWithSnapshot(Consumer<EncodedFrame> reply) {
+        snapshotReplies.add(reply);
+    }
+
+    public void resetSimulation() {
+        if (replayLog != null) {
+            replayLog.recordReset(tickCount);
+        }
+        shapes.clear();
+        shapeIdCounter = 0;
+        lastRotationTime = simulationTime;
+        deltaEncoder.invalidate();
+        viewIndexTick = -1;
+    }
+
+    /**
+     * Starts recording commands to the log, beginning with a checkpoint of the current state,
+     * plus a checkpoint every {@code interval} ticks.
+     */
+    public void attachReplayLog(ReplayLog log, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        usePanel(panelConfig.getCurrentConfig());
+        replayLog = log;
+        checkpointInterval = interval;
+        recordCheckpoint();
+        log.recordTick(tickCount);
+    }
+
+    public void detachReplayLog() {
+        replayLog = null;
+    }
+
+    // Written straight from the live arrays: the log is only fed by the owner
+    private void recordCheckpoint() {
+        Checkpoint checkpoint = checkpoint(shapes, selection);
+        replayLog.recordCheckpoint(tickCount, checkpoint.size(), checkpoint::write);
+    }
+
+    /**
+     * The state in the layout {@link #restoreCheckpoint} reads, from any thread. A world
+     * being stepped is copied by its owner, as a command before its next step; one nobody
+     * holds, such as a suspended room or a stopped loop, is claimed and copied here. Either
+     * way the copy is serialized on the calling thread, so a persisted snapshot delays a tick
+     * by no more than a few memory copies.
+     */
+    public byte[] captureCheckpoint() {
+        CompletableFuture<Checkpoint> copied = new CompletableFuture<>();
+        boolean submitted = false;
+        while (!copied.isDone()) {
+            if (tryOwn()) {
+                try {
+                    // The owner may have run the command just before letting go
+                    if (!copied.isDone()) {
+                        copied.complete(copyCheckpoint());
+                    }
+                } finally {
+                    disown();
+                }
+            } else if (!submitted) {
+                submit(w -> {
+                    if (!copied.isDone()) {
+                        copied.complete(w.copyCheckpoint());
+                    }
+                });
+                submitted = true;
+            } else {
+                awaitCheckpoint(copied);
+            }
+        }
+        Checkpoint checkpoint = copied.join();
+        ByteBuffer out = ByteBuffer.allocate(checkpoint.size());
+        checkpoint.write(out);
+        return out.array();
+    }
+
+    // A room suspended after the command was queued never runs it, so the wait is bounded
+    // and the caller tries to claim the world again
+    private static void awaitCheckpoint(CompletableFuture<Checkpoint> copied) {
+        try {
+            copied.get(CHECKPOINT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Still owned, or no longer stepped; the loop finds out which
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to copy the world", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a checkpoint", e);
+        }
+    }
+
+    private Checkpoint copyCheckpoint() {
+        ShapeStore copy = new ShapeStore();
+        copy.ensureCapacity(shapes.size());
+        copy.copyFrom(shapes);
+        return checkpoint(copy, Arrays.copyOf(selection, selectionSize));
+    }
+
+    private Checkpoint checkpoint(ShapeStore store, int[] order) {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.tickCount = tickCount;
+        checkpoint.simulationTime = simulationTime;
+        checkpoint.lastRotationTime = lastRotationTime;
+        checkpoint.shapeIdCounter = shapeIdCounter;
+        checkpoint.randomState = random.getState();
+        checkpoint.panelWidth = panelWidth;
+        checkpoint.panelHeight = panelHeight;
+        checkpoint.selection = order;
+        checkpoint.selectionSize = selectionSize;
+        checkpoint.shapes = store;
+        return checkpoint;
+    }
+
+    /**
+     * Replaces the whole state with a checkpoint. For the owner, as a command, or for a world
+     * nothing steps yet.
+     */
+    public void restoreCheckpoint(ByteBuffer in) {
+        tickCount = in.getLong();
+        simulationTime = in.getDouble();
+        lastRotationTime = in.getDouble();
+        shapeIdCounter = in.getInt();
+        random.setState(in.getLong());
+        panelWidth = in.getDouble();
+        panelHeight = in.getDouble();
+        panelConfig.setPanelSize(panelWidth, panelHeight);
+        selectionSize = in.getInt();
+        if (selection.length < selectionSize) {
+            selection = new int[selectionSize];
+        }
+        for (int i = 0; i < selectionSize; i++) {
+            selection[i] = in.getInt();
+        }
+        shapes.readFrom(in);
+        deltaEncoder.invalidate();
+        viewIndexTick = -1;
+        publishSnapshot();
+        // Connected clients still need the new state, so the next broadcast is a keyframe
+        deltaEncoder.invalidate();
+
+        // The state was replaced wholesale, so a replay has to start over from here
+        if (replayLog != null) {
+            recordCheckpoint();
+            replayLog.recordTick(tickCount);
+        }
+    }
+
+    /**
+     * Everything the next step depends on: clocks, id counter, random state, panel, the
+     * rotation permutation and the store.
+     */
+    private static final class Checkpoint {
+        long tickCount;
+        double simulationTime;
+        double lastRotationTime;
+        int shapeIdCounter;
+        long randomState;
+        double panelWidth;
+        double panelHeight;
+        int[] selection;
+        int selectionSize;
+        ShapeStore shapes;
+
+        int size() {
+            long size = 8 + 8 + 8 + 4 + 8 + 8 + 8 + 4 + 4L * selectionSize + shapes.getSerializedSize();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("World too large to checkpoint: " + size + " bytes");
+            }
+            return (int) size;
+        }
+
+        void write(ByteBuffer out) {
+            out.putLong(tickCount);
+            out.putDouble(simulationTime);
+            out.putDouble(lastRotationTime);
+            out.putInt(shapeIdCounter);
+            out.putLong(randomState);
+            out.putDouble(panelWidth);
+            out.putDouble(panelHeight);
+            out.putInt(selectionSize);
+            for (int i = 0; i < selectionSize; i++) {
+                out.putInt(selection[i]);
+            }
+            shapes.writeTo(out);
+        }
+    }
+
+    /**
+     * The state published with the last broadcast: a serialized full frame and the counts
+     * it was taken with.
+     */
+    private static final class Snapshot {
+        final EncodedFrame frame;
+        final long tick;
+        final int shapeCount;
+        final int movingCount;
+        final int circleCount;
+        final int rectangleCount;
+        final int triangleCount;
+
+        Snapshot(EncodedFrame frame, long tick, int shapeCount, int movingCount,
+                 int circleCount, int rectangleCount, int triangleCount) {
+            this.frame = frame;
+            this.tick = tick;
+            this.shapeCount = shapeCount;
+            this.movingCount = movingCount;
+            this.circleCount = circleCount;
+            this.rectangleCount = rectangleCount;
+            this.triangleCount = triangleCount;
+        }
+    }
+
+    /**
+     * Shapes as of the last published snapshot.
+     */
+    public int getShapeCount() {
+        return published.shapeCount;
+    }
+
+    public int getMovingCount() {
+        return published.movingCount;
+    }
+
+    public int getCircleCount() {
+        return published.circleCount;
+    }
+
+    public int getRectangleCount() {
+        return published.rectangleCount;
+    }
+
+    public int getTriangleCount() {
+        return published.triangleCount;
+    }
+
+    public void setRotationTimer(Timer rotationTimer) {
+        this.rotationTimer = rotationTimer;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public PanelConfigService getPanelConfig() {
+        return panelConfig;
+    }
+}
@@ -0,0 +1,171 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import com.nazli.simsoft.model.WorldSnapshot;
+import com.nazli.simsoft.repository.WorldSnapshotRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the default world and every room through JPA, one BLOB row per world, and
+ * restores them at startup before the simulation loop starts. Each round has every world's
+ * owner copy its checkpoint between two ticks, see {@link SimulationWorld#captureCheckpoint},
+ * and writes the copies to the database from a background thread. Worlds that have not
+ * ticked since their last snapshot are skipped.
+ *
+ * With persistence off the bean does not exist at all, see PersistenceEnvironmentPostProcessor.
+ * The flag is still checked at startup because an AOT-processed build fixes this condition
+ * at build time.
+ */
+@Service
+@ConditionalOnProperty(name = "simulation.persistence.enabled", havingValue = "true")
+public class SnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+    private static final String DEFAULT_WORLD_ID = "default";
+    private static final String ROOM_PREFIX = "rooms/";
+
+    @Autowired
+    private WorldSnapshotRepository repository;
+
+    @Autowired
+    private PhysicsSimulationService physicsSimulationService;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private SimulationMetrics metrics;
+
+    @Value("${simulation.persistence.enabled:false}")
+    private boolean enabled;
+
+    @Value("${simulation.persistence.interval:10s}")
+    private Duration interval;
+
+    private ScheduledExecutorService executor;
+    // worldId -> tick of the last persisted state; only touched by the snapshot thread
+    private final Map<String, Long> savedTicks = new HashMap<>();
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        restore();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Fixed delay: a slow write postpones the next round instead of stacking up behind it
+        executor.scheduleWithFixedDelay(this::snapshotSafely, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (executor == null) return;
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        // The simulation loop has stopped by now, so this keeps the final state
+        snapshotSafely();
+    }
+
+    private void restore() {
+        long started = System.nanoTime();
+        int restored = 0;
+        int shapes = 0;
+        for (WorldSnapshot snapshot : repository.findAll()) {
+            String worldId = snapshot.getWorldId();
+            if (snapshot.getFormat() != SimulationWorld.CHECKPOINT_FORMAT) {
+                log.warn("Ignoring snapshot of {} in checkpoint format {}", worldId, snapshot.getFormat());
+                continue;
+            }
+            try {
+                SimulationWorld world = restore(worldId, ByteBuffer.wrap(snapshot.getState()));
+                savedTicks.put(worldId, snapshot.getTick());
+                restored++;
+                shapes += world.getShapeCount();
+            } catch (RuntimeException e) {
+                log.warn("Could not restore {} from its snapshot: {}", worldId, e.getMessage());
+            }
+        }
+        if (restored > 0) {
+            log.info("Restored {} worlds with {} shapes in {} ms", restored, shapes,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+    }
+
+    // Each world is restored before anything steps it: the default one before the loop
+    // starts, a room before it is in the map. Rooms come back suspended, so a restart does not
+    // tick every room ever persisted until housekeeping catches up with them
+    private SimulationWorld restore(String worldId, ByteBuffer state) {
+        if (DEFAULT_WORLD_ID.equals(worldId)) {
+            SimulationWorld world = physicsSimulationService.getWorld();
+            if (!world.tryOwn()) {
+                throw new IllegalStateException("The default world is already running");
+            }
+            try {
+                world.restoreCheckpoint(state);
+            } finally {
+                world.disown();
+            }
+            return world;
+        }
+        if (worldId.startsWith(ROOM_PREFIX)) {
+            return roomService.restoreRoom(worldId.substring(ROOM_PREFIX.length()), state);
+        }
+        throw new IllegalArgumentException("Unknown world " + worldId);
+    }
+
+    // An exception would cancel the periodic task, so a failed round only logs
+    private void snapshotSafely() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.warn("World snapshot failed", e);
+        }
+    }
+
+    private void snapshot() {
+        Map<String, SimulationWorld> worlds = new LinkedHashMap<>();
+        worlds.put(DEFAULT_WORLD_ID, physicsSimulationService.getWorld());
+        roomService.getWorlds().forEach((roomId, world) -> worlds.put(ROOM_PREFIX + roomId, world));
+
+        long started = System.nanoTime();
+        Instant now = Instant.now();
+        for (Map.Entry<String, SimulationWorld> entry : worlds.entrySet()) {
+            String worldId = entry.getKey();
+            SimulationWorld world = entry.getValue();
+            Long savedTick = savedTicks.get(worldId);
+            if (savedTick != null && savedTick == world.getTickCount()) continue;
+
+            byte[] state = metrics.getSnapshotCaptureTimer().record(world::captureCheckpoint);
+            // Every checkpoint starts with its tick
+            long tick = ByteBuffer.wrap(state).getLong(0);
+            if (repository.overwrite(worldId, SimulationWorld.CHECKPOINT_FORMAT, tick, now, state) == 0) {
+                repository.save(new WorldSnapshot(worldId, SimulationWorld.CHECKPOINT_FORMAT, tick, now, state));
+            }
+            savedTicks.put(worldId, tick);
+        }
+
+        // Evicted rooms should not come back on the next start
+        savedTicks.keySet().retainAll(worlds.keySet());
+        repository.deleteOthers(worlds.keySet());
+        metrics.getSnapshotWriteTimer().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,81 @@
+package com.nazli.simsoft.service;
+
+import com.nazli.simsoft.broadcast.EncodedFrame;
+import com.nazli.simsoft.dto.Viewport;
+import com.nazli.simsoft.util.Constants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interest management for the default world. A session that sends its viewport to
+ * {@code /app/viewport} gets, on {@code /user/queue/viewport}, only the shapes it can see
+ * instead of the whole world.
+ */
+@Service
+public class ViewportService {
+
+    private static final double MIN_ZOOM = 0.01;
+    private static final double MAX_ZOOM = 100;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<String, Viewport> viewports = new ConcurrentHashMap<>();
+
+    public void setViewport(String sessionId, Viewport viewport) {
+        if (sessionId == null || viewport == null) {
+            return;
+        }
+        if (!(viewport.getWidth() > 0) || !(viewport.getHeight() > 0)) {
+            throw new IllegalArgumentException("Viewport width and height must be positive");
+        }
+        double zoom = viewport.getZoom() > 0 ? viewport.getZoom() : 1.0;
+        viewport.setZoom(Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom)));
+        viewports.put(sessionId, viewport);
+    }
+
+    public void clearViewport(String sessionId) {
+        if (sessionId != null) {
+            viewports.remove(sessionId);
+        }
+    }
+
+    public boolean hasViewports() {
+        return !viewports.isEmpty();
+    }
+
+    /**
+     * Sends every registered session its own view of the world.
+     */
+    public void broadcast(SimulationWorld world) {
+        viewports.forEach((sessionId, viewport) -> send(sessionId, encode(world, viewport)));
+    }
+
+    private EncodedFrame encode(SimulationWorld world, Viewport viewport) {
+        try {
+            return new EncodedFrame(objectMapper.writeValueAsBytes(world.viewportFrame(viewport)), world.getTickCount());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode viewport frame", e);
+        }
+    }
+
+    private void send(String sessionId, EncodedFrame frame) {
+        PhysicsSimulationService.sendToSession(messagingTemplate, sessionId, Constants.QUEUE_VIEWPORT, frame);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        clearViewport(event.getSessionId());
+    }
+}
@@ -18,10 +18,23 @@ public final class Constants {
     public static final double MAX_SIZE = 50.0;
     public static final double ANGULAR_VELOCITY_RANGE = 2.0; // radians per second
     
+    // Collision constants
+    public static final double COLLISION_CELL_SIZE = Math.ceil(MAX_SIZE * Math.sqrt(2)); // widest possible overlap
+    
     // API constants
     public static final String API_BASE_PATH = "/api";
     public static final String WEBSOCKET_ENDPOINT = "/ws/shapes";
+    public static final String RAW_WEBSOCKET_ENDPOINT = "/ws/raw"; // plain WebSocket, binary frames only
     public static final String TOPIC_SHAPES = "/topic/shapes";
+    public static final String TOPIC_SHAPES_BINARY = "/topic/shapes.binary";
+    public static final String TOPIC_SHAPES_BASE64 = "/topic/shapes.binary.base64";
+    public static final String BINARY_SHAPES_MIME_TYPE = "application/vnd.simsoft.shapes";
+    public static final String TOPIC_ROOMS_PREFIX = "/topic/rooms/";
+    public static final String ROOM_SHAPES_SUFFIX = "/shapes";
+    public static final String QUEUE_ROOMS_PREFIX = "/queue/rooms/"; // per session, via /user/queue/rooms/{id}/shapes
+    public static final String FRAME_TIME_HEADER = "frame-time"; // encode time of a broadcast, epoch microseconds
+    public static final String QUEUE_SHAPES = "/queue/shapes"; // per session, via /user/queue/shapes
+    public static final String QUEUE_VIEWPORT = "/queue/viewport"; // per session, via /user/queue/viewport
     
     // Color constants
     public static final String[] SHAPE_COLORS = {
@@ -0,0 +1,57 @@
+package com.nazli.simsoft.util;
+
+/**
+ * SplitMix64, the generator behind {@link java.util.SplittableRandom}, with its state
+ * exposed so a world's randomness can be checkpointed and restored exactly. Not thread-safe;
+ * each world owns one and uses it under its own lock.
+ */
+public final class SeededRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long state;
+
+    public SeededRandom(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        long z = (state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Uniform in [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Uniform in [0, bound), without modulo bias.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive");
+        }
+        int mask = bound - 1;
+        int value = (int) (nextLong() >>> 33);
+        if ((bound & mask) == 0) {
+            return value & mask;
+        }
+        for (int u = value; u - (value = u % bound) + mask < 0; u = (int) (nextLong() >>> 33)) {
+        }
+        return value;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+}
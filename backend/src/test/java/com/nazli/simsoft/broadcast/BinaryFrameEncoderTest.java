@@ -0,0 +1,81 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.model.ShapeStore;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BinaryFrameEncoderTest {
+
+    @Test
+    void writesTheHeaderAndOneRecordPerShape() {
+        ShapeStore store = new ShapeStore();
+        store.add(7, ShapeStore.RECTANGLE, 500, 250, 30.5, (byte) 3);
+        int moving = store.add(9, ShapeStore.TRIANGLE, 0, 1000, 12, (byte) 1);
+        store.setMotion(moving, 1, 0, 0);
+        store.getAngle()[moving] = -Math.PI / 2;
+
+        ByteBuffer frame = ByteBuffer.wrap(new BinaryFrameEncoder().encode(store, 42, 1000, 500));
+
+        assertEquals(BinaryFrameEncoder.HEADER_BYTES + 2 * BinaryFrameEncoder.RECORD_BYTES, frame.remaining());
+        assertEquals(42, frame.getInt());
+        assertEquals(1000, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(500, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(2, frame.getInt());
+        assertEquals(BinaryFrameEncoder.RECORD_BYTES, frame.getShort());
+        assertEquals(BinaryFrameEncoder.VERSION, frame.getShort());
+
+        assertEquals(7, frame.getInt());
+        assertEquals(ShapeStore.RECTANGLE, frame.get());
+        assertEquals(3, frame.get());
+        assertEquals(32768, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(32768, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(0, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(30.5 * 256, Short.toUnsignedInt(frame.getShort()));
+
+        // Moving sets bit 7 of the type; positions clamp to the panel, angles wrap to a turn
+        assertEquals(9, frame.getInt());
+        assertEquals(ShapeStore.TRIANGLE | 0x80, frame.get() & 0xFF);
+        assertEquals(1, frame.get());
+        assertEquals(0, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(65535, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(49151, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(12 * 256, Short.toUnsignedInt(frame.getShort()));
+    }
+
+    @Test
+    void reusesItsBufferWithoutLeakingOlderFrames() {
+        ShapeStore store = new ShapeStore();
+        for (int id = 0; id < 100; id++) {
+            store.add(id, ShapeStore.CIRCLE, id, id, 20, (byte) 0);
+        }
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        encoder.encode(store, 1, 800, 600);
+        store.clear();
+        store.add(5, ShapeStore.CIRCLE, 1, 1, 20, (byte) 0);
+
+        byte[] frame = encoder.encode(store, 2, 800, 600);
+
+        assertEquals(BinaryFrameEncoder.HEADER_BYTES + BinaryFrameEncoder.RECORD_BYTES, frame.length);
+        assertEquals(5, ByteBuffer.wrap(frame).getInt(BinaryFrameEncoder.HEADER_BYTES));
+    }
+
+    @Test
+    void roundsThePanelSizeAndSendsItUnsigned() {
+        ShapeStore store = new ShapeStore();
+        store.add(1, ShapeStore.CIRCLE, 1000.6, 40000, 20, (byte) 0);
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+
+        ByteBuffer frame = ByteBuffer.wrap(encoder.encode(store, 1, 1000.6, 40000));
+        assertEquals(1001, Short.toUnsignedInt(frame.getShort(4)));
+        assertEquals(40000, Short.toUnsignedInt(frame.getShort(6)));
+        // Scaled to the size as sent, so x decodes against 1001
+        assertEquals(1000.6, Short.toUnsignedInt(frame.getShort(BinaryFrameEncoder.HEADER_BYTES + 6)) / 65535.0 * 1001, 1001 / 65535.0);
+        assertEquals(65535, Short.toUnsignedInt(frame.getShort(BinaryFrameEncoder.HEADER_BYTES + 8)));
+
+        frame = ByteBuffer.wrap(encoder.encode(store, 2, 100000, 600));
+        assertEquals(65535, Short.toUnsignedInt(frame.getShort(4)));
+    }
+}
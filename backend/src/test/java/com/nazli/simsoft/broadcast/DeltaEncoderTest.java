@@ -0,0 +1,260 @@
+package com.nazli.simsoft.broadcast;
+
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.dto.StateFrame;
+import com.nazli.simsoft.model.Shape;
+import com.nazli.simsoft.model.ShapeStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DeltaEncoderTest {
+
+    private static ShapeStore storeWith(int count, double size) {
+        ShapeStore store = new ShapeStore();
+        for (int id = 0; id < count; id++) {
+            store.add(id, ShapeStore.CIRCLE, 100 + id, 100, size, (byte) 0);
+        }
+        return store;
+    }
+
+    private static List<String> changedIds(StateFrame frame) {
+        return frame.getChanges().stream().map(ShapeDelta::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void keyframeFirstThenDeltasOnTopOfIt() {
+        ShapeStore store = storeWith(3, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+
+        StateFrame keyframe = encoder.encode(store);
+        assertEquals(StateFrame.KEYFRAME, keyframe.getType());
+        assertEquals(3, keyframe.getShapes().size());
+
+        StateFrame delta = encoder.encode(store);
+        assertEquals(StateFrame.DELTA, delta.getType());
+        assertEquals(keyframe.getSeq() + 1, delta.getSeq());
+        assertEquals(List.of(), delta.getChanges());
+    }
+
+    @Test
+    void keyframeIntervalAndInvalidateStartNewChains() {
+        ShapeStore store = storeWith(1, 20);
+        DeltaEncoder encoder = new DeltaEncoder(3);
+        encoder.encode(store);
+
+        assertEquals(StateFrame.DELTA, encoder.encode(store).getType());
+        assertEquals(StateFrame.DELTA, encoder.encode(store).getType());
+        assertEquals(StateFrame.KEYFRAME, encoder.encode(store).getType());
+
+        encoder.invalidate();
+        assertEquals(StateFrame.KEYFRAME, encoder.encode(store).getType());
+    }
+
+    @Test
+    void deltaCarriesOnlyChangedFieldsOfMovingBodies() {
+        ShapeStore store = storeWith(3, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        store.setMotion(1, 5, 0, 0);
+        encoder.encode(store);
+
+        store.integrate(1, 1000, 1000);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(List.of("shape_1"), changedIds(delta));
+        ShapeDelta change = delta.getChanges().get(0);
+        assertEquals(106.0, change.getX());
+        assertNull(change.getY());
+        assertNull(change.getVelocityX());
+        assertNull(change.getMoving());
+    }
+
+    @Test
+    void bodyComingToRestIsSentOnceThenLeftOut() {
+        ShapeStore store = storeWith(2, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        store.setMotion(0, 5, 0, 0);
+        encoder.encode(store);
+
+        store.integrate(1, 1000, 1000);
+        store.stopMoving(0);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(List.of("shape_0"), changedIds(delta));
+        ShapeDelta change = delta.getChanges().get(0);
+        assertEquals(Boolean.FALSE, change.getMoving());
+        assertEquals(0.0, change.getVelocityX());
+        assertEquals(105.0, change.getX());
+
+        assertEquals(List.of(), encoder.encode(store).getChanges());
+    }
+
+    @Test
+    void sleeperChangedByCommandIsSent() {
+        ShapeStore store = storeWith(2, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        encoder.encode(store);
+
+        store.getY()[1] = 300;
+        store.markChanged(1);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(List.of("shape_1"), changedIds(delta));
+        assertEquals(300.0, delta.getChanges().get(0).getY());
+        assertEquals(List.of(), encoder.encode(store).getChanges());
+    }
+
+    @Test
+    void bodyWokenAndStoppedBetweenFramesIsStillSent() {
+        ShapeStore store = storeWith(2, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        encoder.encode(store);
+
+        store.setMotion(0, 50, 0, 0);
+        store.integrate(1, 1000, 1000);
+        store.stopMoving(0);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(List.of("shape_0"), changedIds(delta));
+        assertEquals(150.0, delta.getChanges().get(0).getX());
+        assertNull(delta.getChanges().get(0).getMoving());
+    }
+
+    @Test
+    void smallMovingBodiesTakeTurnsButAlwaysReportComingToRest() {
+        ShapeStore store = storeWith(1, 10);
+        store.setMotion(0, 1, 0, 0);
+        BroadcastDetail detail = new BroadcastDetail(1, 0, 0, 50, 4);
+        DeltaEncoder encoder = new DeltaEncoder(100);
+        encoder.encode(store, detail);
+
+        int sent = 0;
+        for (int tick = 0; tick < 8; tick++) {
+            store.integrate(1, 1000, 1000);
+            StateFrame delta = encoder.encode(store, detail);
+            if (!delta.getChanges().isEmpty()) {
+                sent++;
+                // Whatever it missed comes along with its next turn
+                assertEquals(store.getX()[0], delta.getChanges().get(0).getX());
+            }
+        }
+        assertEquals(2, sent);
+
+        // Its turn comes on sequence numbers that are multiples of 4; this one is not
+        store.integrate(1, 1000, 1000);
+        store.stopMoving(0);
+        StateFrame delta = encoder.encode(store, detail);
+        assertNotEquals(0, delta.getSeq() % 4);
+        assertEquals(List.of("shape_0"), changedIds(delta));
+        assertEquals(Boolean.FALSE, delta.getChanges().get(0).getMoving());
+        assertEquals(store.getX()[0], delta.getChanges().get(0).getX());
+    }
+
+    @Test
+    void roundedDeltasLeaveOutChangesBelowTheStep() {
+        ShapeStore store = storeWith(1, 20);
+        store.setMotion(0, 0.3, 0, 0);
+        BroadcastDetail detail = new BroadcastDetail(1, 1, 0, 0, 1);
+        DeltaEncoder encoder = new DeltaEncoder(100);
+        encoder.encode(store, detail);
+
+        // 100.3 still rounds to the 100 clients have; the exact velocity does not survive
+        store.integrate(1, 1000, 1000);
+        ShapeDelta change = encoder.encode(store, detail).getChanges().get(0);
+        assertNull(change.getX());
+        assertEquals(0.0, change.getVelocityX());
+
+        store.integrate(1, 1000, 1000);
+        store.integrate(1, 1000, 1000);
+        change = encoder.encode(store, detail).getChanges().get(0);
+        assertEquals(101.0, change.getX());
+        assertNull(change.getVelocityX());
+    }
+
+    // As SimulationWorld does it
+    private static void remove(ShapeStore store, DeltaEncoder encoder, int id) {
+        int index = store.indexOf(id);
+        int last = store.remove(index);
+        encoder.removed(index, last, id);
+    }
+
+    @Test
+    void addedAndRemovedShapesGoOutWithTheNextDelta() {
+        ShapeStore store = storeWith(3, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        encoder.encode(store);
+
+        encoder.added(store.add(10, ShapeStore.TRIANGLE, 50, 60, 20, (byte) 0));
+        remove(store, encoder, 0);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(StateFrame.DELTA, delta.getType());
+        assertEquals(List.of("shape_10"), delta.getAdded().stream().map(Shape::getId).collect(Collectors.toList()));
+        assertEquals(List.of("shape_0"), delta.getRemoved());
+        assertEquals(List.of(), delta.getChanges());
+
+        StateFrame next = encoder.encode(store);
+        assertNull(next.getAdded());
+        assertNull(next.getRemoved());
+        assertEquals(List.of(), next.getChanges());
+    }
+
+    @Test
+    void shapeAddedAndRemovedBetweenFramesIsNeverMentioned() {
+        ShapeStore store = storeWith(2, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        encoder.encode(store);
+
+        encoder.added(store.add(10, ShapeStore.CIRCLE, 50, 60, 20, (byte) 0));
+        encoder.added(store.add(11, ShapeStore.CIRCLE, 70, 80, 20, (byte) 0));
+        remove(store, encoder, 10);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(List.of("shape_11"), delta.getAdded().stream().map(Shape::getId).collect(Collectors.toList()));
+        assertNull(delta.getRemoved());
+    }
+
+    @Test
+    void bodyMovedIntoARemovedSlotKeepsWhatWasSentAboutIt() {
+        ShapeStore store = storeWith(4, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        store.setMotion(3, 5, 0, 0);
+        encoder.encode(store);
+
+        // Moving body 3 takes index 1; only its own movement is news
+        remove(store, encoder, 1);
+        store.integrate(1, 1000, 1000);
+        StateFrame delta = encoder.encode(store);
+
+        assertEquals(List.of("shape_1"), delta.getRemoved());
+        assertEquals(List.of("shape_3"), changedIds(delta));
+        assertEquals(108.0, delta.getChanges().get(0).getX());
+        assertNull(delta.getChanges().get(0).getVelocityX());
+
+        store.stopMoving(store.indexOf(3));
+        assertEquals(Boolean.FALSE, encoder.encode(store).getChanges().get(0).getMoving());
+    }
+
+    @Test
+    void resyncKeyframeContinuesTheChainUnlessChangesArePending() {
+        ShapeStore store = storeWith(2, 20);
+        DeltaEncoder encoder = new DeltaEncoder(60);
+        encoder.encode(store);
+        long sequence = encoder.encode(store).getSeq();
+
+        assertEquals(sequence, encoder.keyframe(store).getSeq());
+
+        encoder.added(store.add(10, ShapeStore.CIRCLE, 50, 60, 20, (byte) 0));
+        StateFrame keyframe = encoder.keyframe(store);
+        assertEquals(sequence + 1, keyframe.getSeq());
+        assertEquals(3, keyframe.getShapes().size());
+        // Everything pending went out with it
+        assertEquals(StateFrame.DELTA, encoder.encode(store).getType());
+        assertNull(encoder.encode(store).getAdded());
+    }
+}
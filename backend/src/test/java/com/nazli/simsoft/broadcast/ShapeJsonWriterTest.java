@@ -0,0 +1,37 @@
+package com.nazli.simsoft.broadcast;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nazli.simsoft.model.ShapeStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ShapeJsonWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesWhatJacksonWritesForTheShapeList() throws Exception {
+        ShapeStore store = new ShapeStore();
+        store.add(1, ShapeStore.CIRCLE, 10.5, 20.25, 30, (byte) 0);
+        store.add(42, ShapeStore.TRIANGLE, 0.1, 1e-7, 12, (byte) 2);
+        store.setMotion(1, 3.5, -1.25, 0.01);
+        ShapeJsonWriter writer = new ShapeJsonWriter(objectMapper.getFactory());
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(store.toShapes()), writer.write(store));
+    }
+
+    @Test
+    void reusedGeneratorStartsEachFrameClean() throws Exception {
+        ShapeStore store = new ShapeStore();
+        store.add(7, ShapeStore.RECTANGLE, 100, 200, 40, (byte) 1);
+        ShapeJsonWriter writer = new ShapeJsonWriter(objectMapper.getFactory());
+        writer.write(store);
+
+        store.add(8, ShapeStore.CIRCLE, 300, 400, 20, (byte) 3);
+        assertArrayEquals(objectMapper.writeValueAsBytes(store.toShapes()), writer.write(store));
+
+        store.clear();
+        assertArrayEquals("[]".getBytes(), writer.write(store));
+    }
+}
@@ -0,0 +1,66 @@
+package com.nazli.simsoft.controller;
+
+import com.nazli.simsoft.broadcast.RawSessionRegistry;
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.replay.ReplayLog;
+import com.nazli.simsoft.service.PanelConfigService;
+import com.nazli.simsoft.service.PhysicsSimulationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class RawSocketHandlerTest {
+
+    private RawSocketHandler handler;
+    private PhysicsSimulationService physicsSimulationService;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() {
+        handler = new RawSocketHandler();
+        physicsSimulationService = mock(PhysicsSimulationService.class);
+        session = mock(WebSocketSession.class);
+        ReflectionTestUtils.setField(handler, "sessions", mock(RawSessionRegistry.class));
+        ReflectionTestUtils.setField(handler, "physicsSimulationService", physicsSimulationService);
+        ReflectionTestUtils.setField(handler, "panelConfigService", new PanelConfigService());
+    }
+
+    @Test
+    void updateCommandSetsTheGivenFields() throws Exception {
+        ByteBuffer command = ByteBuffer.allocate(1 + 4 + 2 * (4 + 1) + 3 * 8);
+        command.put(RawSocketHandler.UPDATE).putInt(2);
+        command.putInt(3).put((byte) (ReplayLog.UPDATE_X | ReplayLog.UPDATE_Y | ReplayLog.UPDATE_MOVING));
+        command.putDouble(10).putDouble(20);
+        command.putInt(7).put((byte) ReplayLog.UPDATE_ANGULAR_VELOCITY).putDouble(0.5);
+        handler.handleMessage(session, new BinaryMessage(command.flip()));
+
+        ShapeDelta first = new ShapeDelta("shape_3");
+        first.setX(10.0);
+        first.setY(20.0);
+        first.setMoving(false);
+        ShapeDelta second = new ShapeDelta("shape_7");
+        second.setAngularVelocity(0.5);
+        verify(physicsSimulationService).updateShapes(List.of(first, second));
+    }
+
+    @Test
+    void updateCommandWithTooLargeCountClosesTheSession() throws Exception {
+        ByteBuffer command = ByteBuffer.allocate(1 + 4 + 4 + 1);
+        command.put(RawSocketHandler.UPDATE).putInt(Integer.MAX_VALUE).putInt(3).put((byte) 0);
+        handler.handleMessage(session, new BinaryMessage(command.flip()));
+
+        verify(physicsSimulationService, never()).updateShapes(any());
+        verify(session).close(CloseStatus.BAD_DATA.withReason("Truncated command"));
+    }
+}
@@ -0,0 +1,261 @@
+package com.nazli.simsoft.model;
+
+import com.nazli.simsoft.util.SeededRandom;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShapeStoreTest {
+
+    // Bodies with ids first, first + 1, ... at x = id, y = 2 * id
+    private static ShapeStore storeWith(int first, int count) {
+        ShapeStore store = new ShapeStore();
+        for (int id = first; id < first + count; id++) {
+            store.add(id, (byte) (id % 3), id, 2 * id, 20, (byte) 0);
+        }
+        return store;
+    }
+
+    @Test
+    void removeMovesTheLastBodyIntoTheGap() {
+        ShapeStore store = storeWith(10, 4);
+
+        assertEquals(3, store.remove(store.indexOf(11)));
+
+        assertEquals(3, store.size());
+        assertEquals(13, store.getIds()[1]);
+        assertEquals(13.0, store.getX()[1]);
+        assertEquals(26.0, store.getY()[1]);
+        assertEquals(1, store.indexOf(13));
+        assertEquals(-1, store.indexOf(11));
+        assertEquals(0, store.indexOf(10));
+        assertEquals(2, store.indexOf(12));
+    }
+
+    @Test
+    void removingTheLastBodyMovesNothing() {
+        ShapeStore store = storeWith(0, 3);
+
+        assertEquals(2, store.remove(2));
+
+        assertEquals(2, store.size());
+        assertEquals(-1, store.indexOf(2));
+        assertEquals(1, store.indexOf(1));
+    }
+
+    @Test
+    void idIndexFindsLargeIdsAndRejectsOthers() {
+        ShapeStore store = storeWith(0, 2);
+        store.add(5000, ShapeStore.CIRCLE, 1, 1, 20, (byte) 0);
+        store.add(Integer.MAX_VALUE, ShapeStore.CIRCLE, 1, 1, 20, (byte) 0);
+
+        assertEquals(2, store.indexOf(5000));
+        assertEquals(3, store.indexOf(Integer.MAX_VALUE));
+        assertEquals(-1, store.indexOf(4999));
+        assertEquals(-1, store.indexOf(5001));
+        assertEquals(-1, store.indexOf(100000));
+        assertEquals(-1, store.indexOf(-1));
+    }
+
+    @Test
+    void idIndexStaysSizedByTheBodiesUnderChurn() {
+        ShapeStore store = storeWith(0, 50);
+        int tableSize = ((int[]) ReflectionTestUtils.getField(store, "idKeys")).length;
+
+        // Ids only ever grow, as they do when shapes are removed and new ones added
+        for (int id = 50; id < 100_000; id++) {
+            store.remove(store.indexOf(id - 50));
+            store.add(id, ShapeStore.CIRCLE, id, 2 * id, 20, (byte) 0);
+        }
+
+        assertEquals(tableSize, ((int[]) ReflectionTestUtils.getField(store, "idKeys")).length);
+        assertEquals(50, store.size());
+        for (int id = 0; id < 100_000 - 50; id += 997) {
+            assertEquals(-1, store.indexOf(id));
+        }
+        for (int id = 100_000 - 50; id < 100_000; id++) {
+            assertEquals(id, store.getIds()[store.indexOf(id)]);
+        }
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        ShapeStore store = storeWith(0, 1000);
+
+        for (int id = 0; id < 1000; id++) {
+            assertEquals(id, store.indexOf(id));
+            assertEquals(id, store.getX()[id]);
+        }
+    }
+
+    @Test
+    void clearForgetsEveryIdAndCount() {
+        ShapeStore store = storeWith(0, 5);
+        store.clear();
+
+        assertEquals(0, store.size());
+        assertEquals(-1, store.indexOf(3));
+        assertEquals(0, store.getTypeCount(ShapeStore.CIRCLE));
+
+        store.add(3, ShapeStore.TRIANGLE, 1, 1, 20, (byte) 0);
+        assertEquals(0, store.indexOf(3));
+        assertEquals(1, store.getTypeCount(ShapeStore.TRIANGLE));
+    }
+
+    @Test
+    void typeCountsFollowAddAndRemove() {
+        ShapeStore store = storeWith(0, 6);
+        assertEquals(2, store.getTypeCount(ShapeStore.CIRCLE));
+        assertEquals(2, store.getTypeCount(ShapeStore.RECTANGLE));
+
+        store.remove(store.indexOf(3));
+        store.remove(store.indexOf(4));
+
+        assertEquals(1, store.getTypeCount(ShapeStore.CIRCLE));
+        assertEquals(1, store.getTypeCount(ShapeStore.RECTANGLE));
+        assertEquals(2, store.getTypeCount(ShapeStore.TRIANGLE));
+    }
+
+    @Test
+    void idsRoundTripThroughTheirText() {
+        assertEquals("shape_42", ShapeStore.formatId(42));
+        assertEquals(42, ShapeStore.parseId("shape_42"));
+        assertEquals(-1, ShapeStore.parseId("shape_x"));
+        assertEquals(-1, ShapeStore.parseId("shape_-7"));
+        assertEquals(-1, ShapeStore.parseId("circle_1"));
+        assertEquals(-1, ShapeStore.parseId(null));
+    }
+
+    // The active set holds exactly the moving bodies, once each
+    private static void assertActiveSet(ShapeStore store, Integer... expected) {
+        Set<Integer> active = new HashSet<>();
+        for (int k = 0; k < store.getActiveCount(); k++) {
+            assertTrue(active.add(store.getActive()[k]), "listed twice");
+        }
+        assertEquals(Set.of(expected), active);
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(active.contains(i), store.getMoving()[i]);
+        }
+    }
+
+    private static Set<Integer> woken(ShapeStore store) {
+        Set<Integer> woken = new HashSet<>();
+        for (int k = 0; k < store.getWokenCount(); k++) {
+            assertTrue(woken.add(store.getWoken()[k]), "listed twice");
+        }
+        return woken;
+    }
+
+    @Test
+    void activeSetFollowsStartAndStop() {
+        ShapeStore store = storeWith(0, 5);
+        SeededRandom random = new SeededRandom(1);
+        store.startMoving(1, 100, random);
+        store.startMoving(3, 100, random);
+        store.startMoving(4, 100, random);
+        store.startMoving(3, 100, random);
+        assertActiveSet(store, 1, 3, 4);
+
+        store.stopMoving(1);
+        assertActiveSet(store, 3, 4);
+        assertEquals(0.0, store.getVelocityX()[1]);
+
+        store.setMotion(0, 0, 0, 1);
+        store.setMotion(4, 0, 0, 0);
+        assertActiveSet(store, 0, 3);
+
+        store.stopAll();
+        assertActiveSet(store);
+    }
+
+    @Test
+    void removingABodyKeepsTheActiveSetPointingAtTheRightIndices() {
+        ShapeStore store = storeWith(0, 4);
+        SeededRandom random = new SeededRandom(1);
+        store.startMoving(0, 100, random);
+        store.startMoving(3, 100, random);
+
+        // Body 3, moving, takes index 0 of the removed moving body
+        store.remove(0);
+        assertActiveSet(store, 0);
+        assertEquals(3, store.getIds()[store.getActive()[0]]);
+
+        store.remove(2);
+        assertActiveSet(store, 0);
+    }
+
+    @Test
+    void onlyMovingBodiesIntegrate() {
+        ShapeStore store = storeWith(1, 2);
+        store.setMotion(1, 10, 0, 0);
+
+        store.integrate(1, 1000, 1000);
+
+        assertEquals(1.0, store.getX()[0]);
+        assertEquals(12.0, store.getX()[1]);
+    }
+
+    @Test
+    void wokenAndChangedBodiesAreListedOnceUntilCleared() {
+        ShapeStore store = storeWith(0, 4);
+        SeededRandom random = new SeededRandom(1);
+        store.startMoving(1, 100, random);
+        store.stopMoving(1);
+        store.startMoving(1, 100, random);
+        store.markChanged(1);
+        store.markChanged(2);
+        assertEquals(Set.of(1, 2), woken(store));
+
+        store.clearWoken();
+        assertEquals(Set.of(), woken(store));
+        // Still moving, so not woken again
+        store.startMoving(1, 100, random);
+        assertEquals(Set.of(), woken(store));
+    }
+
+    @Test
+    void removingABodyKeepsTheWokenListPointingAtTheRightIndices() {
+        ShapeStore store = storeWith(0, 4);
+        store.markChanged(1);
+        store.markChanged(3);
+
+        // Body 3 takes index 1 with its entry; body 1 is gone
+        store.remove(1);
+        assertEquals(Set.of(1), woken(store));
+        assertEquals(3, store.getIds()[1]);
+
+        store.remove(1);
+        assertEquals(Set.of(), woken(store));
+    }
+
+    @Test
+    void activityVersionMovesWhenTheSetOfSleepersChanges() {
+        ShapeStore store = storeWith(0, 3);
+        SeededRandom random = new SeededRandom(1);
+        long version = store.getActivityVersion();
+
+        store.startMoving(0, 100, random);
+        assertTrue(store.getActivityVersion() > version);
+        version = store.getActivityVersion();
+
+        // A moving body changing is not a sleeper changing
+        store.markChanged(0);
+        assertEquals(version, store.getActivityVersion());
+
+        store.markChanged(1);
+        assertTrue(store.getActivityVersion() > version);
+        version = store.getActivityVersion();
+
+        store.stopMoving(0);
+        assertTrue(store.getActivityVersion() > version);
+        version = store.getActivityVersion();
+
+        store.integrate(1, 1000, 1000);
+        assertEquals(version, store.getActivityVersion());
+    }
+}
@@ -0,0 +1,42 @@
+package com.nazli.simsoft.physics;
+
+import com.nazli.simsoft.model.ShapeStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CollisionResolverTest {
+
+    @Test
+    void movingBodyBouncesOffSleeper() {
+        ShapeStore store = new ShapeStore();
+        store.add(0, ShapeStore.CIRCLE, 300, 100, 40, (byte) 0);
+        int mover = store.add(1, ShapeStore.CIRCLE, 330, 100, 40, (byte) 0);
+        store.setMotion(mover, -50, 0, 0);
+
+        new CollisionResolver().resolve(store, 800, 600);
+
+        assertTrue(store.getX()[mover] >= 340, "pushed clear of the sleeper");
+        assertEquals(50, store.getVelocityX()[mover]);
+    }
+
+    @Test
+    void sleeperMovedByCommandIsSeenAtItsNewPlace() {
+        ShapeStore store = new ShapeStore();
+        int sleeper = store.add(0, ShapeStore.CIRCLE, 100, 100, 40, (byte) 0);
+        int mover = store.add(1, ShapeStore.CIRCLE, 330, 100, 40, (byte) 0);
+        store.setMotion(mover, -50, 0, 0);
+        CollisionResolver resolver = new CollisionResolver();
+        resolver.resolve(store, 800, 600);
+        assertEquals(330, store.getX()[mover]);
+
+        // Moved the way updateShapes does it, without waking it
+        store.getX()[sleeper] = 300;
+        store.markChanged(sleeper);
+        resolver.resolve(store, 800, 600);
+
+        assertTrue(store.getX()[mover] >= 340, "pushed clear of the sleeper");
+        assertEquals(50, store.getVelocityX()[mover]);
+    }
+}
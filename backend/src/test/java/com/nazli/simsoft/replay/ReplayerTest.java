@@ -0,0 +1,132 @@
+package com.nazli.simsoft.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.ShapeDelta;
+import com.nazli.simsoft.service.PanelConfigService;
+import com.nazli.simsoft.service.SimulationWorld;
+import com.nazli.simsoft.util.Constants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReplayerTest {
+
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private SimulationSettings settings() {
+        SimulationSettings settings = new SimulationSettings();
+        settings.setCollisionsEnabled(true);
+        settings.setKeyframeInterval(60);
+        settings.setSeed(42);
+        return settings;
+    }
+
+    private static void step(SimulationWorld world, int ticks, Map<Long, byte[]> states) {
+        for (int i = 0; i < ticks; i++) {
+            world.updateSimulation(Constants.DELTA_TIME);
+            states.put(world.getTickCount(), world.captureCheckpoint());
+        }
+    }
+
+    // A rebuilt tick includes the commands logged at it
+    private static void command(SimulationWorld world, Runnable command, Map<Long, byte[]> states) {
+        command.run();
+        states.put(world.getTickCount(), world.captureCheckpoint());
+    }
+
+    // Every kind of command, spread over a few checkpoints and moving-set rotations
+    private Map<Long, byte[]> recordRun(Path path) throws Exception {
+        PanelConfigService panelConfig = new PanelConfigService();
+        panelConfig.setPanelSize(800, 600);
+        SimulationWorld world = new SimulationWorld(panelConfig, objectMapper, settings(), null);
+        Map<Long, byte[]> states = new HashMap<>();
+        try (ReplayLog log = ReplayLog.create(path, world.getSeed(), Constants.DELTA_TIME, true, CHECKPOINT_INTERVAL)) {
+            world.attachReplayLog(log, CHECKPOINT_INTERVAL);
+            command(world, () -> world.initializeShapes(40, 40, 40), states);
+            step(world, 70, states);
+            command(world, () -> world.addShapes(5, 5, 5), states);
+            step(world, 60, states);
+            command(world, () -> world.removeShapes(new int[] {1, 2, 50, 9999}), states);
+            step(world, 50, states);
+            ShapeDelta moved = new ShapeDelta("shape_3");
+            moved.setX(400.0);
+            moved.setY(300.0);
+            ShapeDelta stopped = new ShapeDelta("shape_4");
+            stopped.setMoving(false);
+            ShapeDelta pushed = new ShapeDelta("shape_5");
+            pushed.setVelocityX(80.0);
+            pushed.setAngularVelocity(-1.0);
+            command(world, () -> world.updateShapes(List.of(moved, stopped, pushed)), states);
+            step(world, 60, states);
+            panelConfig.setPanelSize(700, 500);
+            step(world, 150, states);
+            command(world, world::resetSimulation, states);
+            command(world, () -> world.initializeShapes(10, 10, 10), states);
+            step(world, 30, states);
+            world.detachReplayLog();
+        }
+        return states;
+    }
+
+    @Test
+    void replayedWorldMatchesTheRecordedOneBitForBit() throws Exception {
+        Path path = directory.resolve("world.replay");
+        Map<Long, byte[]> states = recordRun(path);
+
+        try (ReplayReader reader = ReplayReader.open(path)) {
+            assertEquals(420, reader.getLastTick());
+            for (long tick : new long[] {0, 1, 70, 71, 99, 100, 101, 130, 180, 241, 300, 390, 420}) {
+                SimulationWorld replayed = Replayer.rebuild(reader, tick, objectMapper, settings());
+                assertEquals(tick, replayed.getTickCount());
+                assertArrayEquals(states.get(tick), replayed.captureCheckpoint(), "state at tick " + tick);
+            }
+        }
+    }
+
+    @Test
+    void updatesThatMisstateTheirLengthAreRefused() throws Exception {
+        Path path = directory.resolve("world.replay");
+        SimulationWorld world = new SimulationWorld(new PanelConfigService(), objectMapper, settings(), null);
+        Map<Long, byte[]> states = new HashMap<>();
+        try (ReplayLog log = ReplayLog.create(path, world.getSeed(), Constants.DELTA_TIME, true, CHECKPOINT_INTERVAL)) {
+            world.attachReplayLog(log, CHECKPOINT_INTERVAL);
+            command(world, () -> world.initializeShapes(5, 5, 5), states);
+            assertThrows(IllegalStateException.class, () -> log.recordUpdate(world.getTickCount(), 8, out -> out.putInt(1)));
+            step(world, 10, states);
+            world.detachReplayLog();
+        }
+
+        // The refused record left nothing behind, so the rest of the log still reads
+        try (ReplayReader reader = ReplayReader.open(path)) {
+            assertArrayEquals(states.get(10L), Replayer.rebuild(reader, 0, 10, objectMapper, settings()).captureCheckpoint());
+        }
+    }
+
+    @Test
+    void steppingFromTheFirstCheckpointMatchesRestoringALaterOne() throws Exception {
+        Path path = directory.resolve("world.replay");
+        Map<Long, byte[]> states = recordRun(path);
+
+        try (ReplayReader reader = ReplayReader.open(path)) {
+            SimulationWorld stepped = Replayer.rebuild(reader, 0, 385, objectMapper, settings());
+            SimulationWorld restored = Replayer.rebuild(reader, 385, objectMapper, settings());
+
+            assertArrayEquals(states.get(385L), stepped.captureCheckpoint());
+            assertArrayEquals(states.get(385L), restored.captureCheckpoint());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.nazli.simsoft.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nazli.simsoft.broadcast.BroadcastDetail;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomServiceTest {
+
+    private RoomService roomService;
+    private SimpMessagingTemplate messagingTemplate;
+
+    @BeforeEach
+    void setUp() {
+        SimulationSettings settings = new SimulationSettings();
+        settings.setPhysicsRate(60);
+        settings.setNetworkRate(60);
+        settings.setKeyframeInterval(60);
+        settings.setCollisionsEnabled(true);
+        AdaptiveLoadService adaptiveLoad = mock(AdaptiveLoadService.class);
+        when(adaptiveLoad.getDetail()).thenReturn(BroadcastDetail.FULL);
+
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        roomService = new RoomService();
+        ReflectionTestUtils.setField(roomService, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(roomService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(roomService, "settings", settings);
+        ReflectionTestUtils.setField(roomService, "metrics", mock(SimulationMetrics.class));
+        ReflectionTestUtils.setField(roomService, "adaptiveLoadService", adaptiveLoad);
+        ReflectionTestUtils.setField(roomService, "workers", 2);
+        ReflectionTestUtils.setField(roomService, "maxRooms", 10);
+        // Every room without subscribers is due for eviction on every pass
+        ReflectionTestUtils.setField(roomService, "suspendAfter", Duration.ZERO);
+        ReflectionTestUtils.setField(roomService, "evictAfter", Duration.ZERO);
+        roomService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        roomService.shutdown();
+    }
+
+    @Test
+    void evictedRoomIsReplacedOnNextUse() {
+        SimulationWorld first = roomService.getRoom("lobby");
+        roomService.housekeeping();
+        assertEquals(0, roomService.getRoomCount());
+
+        SimulationWorld second = roomService.getRoom("lobby");
+        assertNotSame(first, second);
+        assertSame(second, roomService.getRoom("lobby"));
+        assertEquals(1, roomService.getActiveRoomCount());
+    }
+
+    @Test
+    void commandAfterEvictionReachesTheRoomThatReplacesIt() throws Exception {
+        SimulationWorld evicted = roomService.getRoom("lobby");
+        roomService.housekeeping();
+
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicReference<SimulationWorld> ranOn = new AtomicReference<>();
+        roomService.submit("lobby", world -> {
+            ranOn.set(world);
+            ran.countDown();
+        });
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertNotSame(evicted, ranOn.get());
+        assertSame(ranOn.get(), roomService.getRoom("lobby"));
+    }
+
+    @Test
+    void restoredRoomStaysSuspendedUntilFirstUse() {
+        SimulationWorld restored = roomService.restoreRoom("lobby",
+                ByteBuffer.wrap(roomService.getRoom("source").captureCheckpoint()));
+        assertEquals(2, roomService.getRoomCount());
+        assertEquals(1, roomService.getActiveRoomCount());
+
+        assertSame(restored, roomService.getRoom("lobby"));
+        assertEquals(2, roomService.getActiveRoomCount());
+    }
+
+    @Test
+    void concurrentEvictionAndActivationNeverOrphanARoom() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread activator = new Thread(() -> {
+            await(start);
+            while (running.get()) {
+                roomService.getRoom("race");
+            }
+        });
+        Thread evictor = new Thread(() -> {
+            await(start);
+            while (running.get()) {
+                roomService.housekeeping();
+            }
+        });
+        activator.start();
+        evictor.start();
+        start.countDown();
+        Thread.sleep(1000);
+        running.set(false);
+        activator.join();
+        evictor.join();
+
+        assertTrue(roomService.getRoomCount() <= 1);
+        roomService.housekeeping();
+        assertEquals(0, roomService.getRoomCount());
+
+        // Every room in the map is gone now; one that resumed after its eviction would still
+        // be ticking and broadcasting on the room's topic
+        Thread.sleep(100);
+        int broadcasts = broadcasts();
+        Thread.sleep(300);
+        assertEquals(broadcasts, broadcasts());
+    }
+
+    private int broadcasts() {
+        return Mockito.mockingDetails(messagingTemplate).getInvocations().size();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
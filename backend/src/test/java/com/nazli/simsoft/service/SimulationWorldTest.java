@@ -0,0 +1,208 @@
+package com.nazli.simsoft.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nazli.simsoft.broadcast.BroadcastDetail;
+import com.nazli.simsoft.broadcast.EncodedFrame;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.dto.Viewport;
+import com.nazli.simsoft.dto.ViewportFrame;
+import com.nazli.simsoft.model.Shape;
+import com.nazli.simsoft.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationWorldTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SimulationWorld newWorld(boolean deltaBroadcasts) {
+        SimulationSettings settings = new SimulationSettings();
+        settings.setCollisionsEnabled(true);
+        settings.setDeltaBroadcasts(deltaBroadcasts);
+        settings.setKeyframeInterval(60);
+        settings.setSeed(42);
+        PanelConfigService panelConfig = new PanelConfigService();
+        panelConfig.setPanelSize(800, 600);
+        SimulationWorld world = new SimulationWorld(panelConfig, objectMapper, settings, null);
+        world.initializeShapes(20, 20, 20);
+        return world;
+    }
+
+    @Test
+    void fullDetailBroadcastIsTheSnapshot() {
+        SimulationWorld world = newWorld(false);
+        world.updateSimulation(Constants.DELTA_TIME);
+
+        assertSame(world.encodeBroadcast(), world.getSnapshotFrame());
+    }
+
+    @Test
+    void roundedBroadcastsLeaveTheSnapshotExact() throws Exception {
+        SimulationWorld world = newWorld(false);
+        BroadcastDetail coarse = new BroadcastDetail(1, 1, 100, 0, 1);
+        world.updateSimulation(Constants.DELTA_TIME);
+        EncodedFrame broadcast = world.encodeBroadcast(coarse);
+        assertFalse(Arrays.equals(broadcast.getPayload(), world.getSnapshotFrame().getPayload()));
+
+        // Asking found it trailing, so the next broadcast publishes an exact one
+        world.updateSimulation(Constants.DELTA_TIME);
+        world.encodeBroadcast(coarse);
+        EncodedFrame snapshot = world.getSnapshotFrame();
+
+        assertEquals(world.getTickCount(), snapshot.getTick());
+        assertArrayEquals(objectMapper.writeValueAsBytes(world.getCurrentShapes()), snapshot.getPayload());
+    }
+
+    @Test
+    void addedShapesStartMovingAtRandomButReproducibly() {
+        SimulationWorld world = newWorld(false);
+        SimulationWorld twin = newWorld(false);
+        world.addShapes(100, 0, 0);
+        twin.addShapes(100, 0, 0);
+
+        List<Shape> added = world.getCurrentShapes().subList(60, 160);
+        long moving = added.stream().filter(Shape::isMoving).count();
+        assertEquals(25, moving);
+        assertTrue(added.subList(25, 100).stream().anyMatch(Shape::isMoving), "not just the first ones");
+        assertEquals(world.getCurrentShapes(), twin.getCurrentShapes());
+    }
+
+    @Test
+    void checkpointRestoresAWorldThatCarriesOnIdentically() {
+        SimulationWorld world = newWorld(true);
+        for (int i = 0; i < 100; i++) {
+            world.updateSimulation(Constants.DELTA_TIME);
+        }
+        world.addShapes(3, 3, 3);
+        world.removeShapes(new int[] {4, 8});
+        world.updateSimulation(Constants.DELTA_TIME);
+        byte[] state = world.captureCheckpoint();
+
+        SimulationSettings settings = new SimulationSettings();
+        settings.setCollisionsEnabled(true);
+        settings.setKeyframeInterval(60);
+        settings.setSeed(7);
+        SimulationWorld restored = new SimulationWorld(new PanelConfigService(), objectMapper, settings, null);
+        restored.restoreCheckpoint(ByteBuffer.wrap(state));
+
+        assertArrayEquals(state, restored.captureCheckpoint());
+        assertEquals(world.getCurrentShapes(), restored.getCurrentShapes());
+        assertEquals(800, restored.getPanelConfig().getWidth());
+        // Published straight away, for readers between the restore and the first broadcast
+        assertEquals(world.getCurrentShapes().size(), restored.getShapeCount());
+
+        // Past a moving-set rotation, which draws from the restored random state and order
+        for (int i = 0; i < 200; i++) {
+            world.updateSimulation(Constants.DELTA_TIME);
+            restored.updateSimulation(Constants.DELTA_TIME);
+        }
+        world.addShapes(2, 2, 2);
+        restored.addShapes(2, 2, 2);
+        assertArrayEquals(world.captureCheckpoint(), restored.captureCheckpoint());
+    }
+
+    @Test
+    void checkpointOfAnOwnedWorldIsCopiedByItsOwner() {
+        SimulationWorld world = newWorld(false);
+        byte[] before = world.captureCheckpoint();
+        assertTrue(world.tryOwn());
+
+        CompletableFuture<byte[]> captured = CompletableFuture.supplyAsync(world::captureCheckpoint);
+        // Whatever the owner does before its next step, the copy waits for it
+        while (!captured.isDone()) {
+            world.runCommands();
+        }
+        world.updateSimulation(Constants.DELTA_TIME);
+        world.disown();
+
+        assertArrayEquals(before, captured.join());
+        assertFalse(Arrays.equals(before, world.captureCheckpoint()));
+    }
+
+    @Test
+    void checkpointOfAWorldLetGoIsCopiedDirectly() {
+        SimulationWorld world = newWorld(false);
+        assertTrue(world.tryOwn());
+        CompletableFuture<byte[]> captured = CompletableFuture.supplyAsync(world::captureCheckpoint);
+        // Suspended with the copy queued: the command never runs, so the caller claims the world
+        world.disown();
+
+        assertArrayEquals(world.captureCheckpoint(), captured.join());
+    }
+
+    @Test
+    void resyncIsAnsweredWithAKeyframeAtTheNextBroadcast() throws Exception {
+        SimulationWorld world = newWorld(true);
+        world.updateSimulation(Constants.DELTA_TIME);
+        world.encodeBroadcast();
+        List<EncodedFrame> replies = new ArrayList<>();
+        world.submit(w -> w.replyWithSnapshot(replies::add));
+        world.updateSimulation(Constants.DELTA_TIME);
+        assertTrue(replies.isEmpty());
+
+        JsonNode delta = objectMapper.readTree(world.encodeBroadcast().getPayload());
+        assertEquals(1, replies.size());
+        JsonNode keyframe = objectMapper.readTree(replies.get(0).getPayload());
+        assertEquals("delta", delta.get("type").asText());
+        assertEquals("keyframe", keyframe.get("type").asText());
+        // The client carries on from the deltas that follow this broadcast's
+        assertEquals(delta.get("seq"), keyframe.get("seq"));
+        assertEquals(world.getTickCount(), replies.get(0).getTick());
+
+        world.updateSimulation(Constants.DELTA_TIME);
+        world.encodeBroadcast();
+        assertEquals(1, replies.size());
+    }
+
+    @Test
+    void roundedBroadcastsRefreshTheSnapshotWhileItIsRead() {
+        SimulationWorld world = newWorld(false);
+        BroadcastDetail coarse = new BroadcastDetail(1, 1, 100, 0, 1);
+        world.updateSimulation(Constants.DELTA_TIME);
+        world.encodeBroadcast();
+        long exact = world.getTickCount();
+
+        // Nobody read it, so it was left as it was
+        step(world, coarse, 8);
+        assertEquals(exact, world.getSnapshotFrame().getTick());
+        // That read found it behind
+        step(world, coarse, 1);
+        assertEquals(world.getTickCount(), world.getSnapshotFrame().getTick());
+        // And while it is read, it never falls more than a few broadcasts behind
+        step(world, coarse, 4);
+        assertEquals(world.getTickCount(), world.getSnapshotFrame().getTick());
+    }
+
+    @Test
+    void viewportsUseThePanelTheWorldSteppedIn() {
+        SimulationWorld world = newWorld(false);
+        world.updateSimulation(Constants.DELTA_TIME);
+        // Resized between the tick and its broadcast: the world has not stepped in it yet
+        world.getPanelConfig().setPanelSize(400, 300);
+
+        ViewportFrame frame = world.viewportFrame(new Viewport(0, 0, 2000, 2000, 1));
+
+        assertEquals(800, frame.getWidth());
+        assertEquals(600, frame.getHeight());
+        assertEquals(60, frame.getShapes().size());
+    }
+
+    private static void step(SimulationWorld world, BroadcastDetail detail, int broadcasts) {
+        for (int i = 0; i < broadcasts; i++) {
+            world.updateSimulation(Constants.DELTA_TIME);
+            world.encodeBroadcast(detail);
+        }
+    }
+}
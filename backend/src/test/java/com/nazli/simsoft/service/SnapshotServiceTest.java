@@ -0,0 +1,141 @@
+package com.nazli.simsoft.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nazli.simsoft.config.SimulationSettings;
+import com.nazli.simsoft.metrics.SimulationMetrics;
+import com.nazli.simsoft.model.WorldSnapshot;
+import com.nazli.simsoft.repository.WorldSnapshotRepository;
+import com.nazli.simsoft.util.Constants;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Every repository call in its own transaction, as on the snapshot thread. Persistence is
+// off by default, which would leave the data layer out
+@DataJpaTest(properties = "simulation.persistence.enabled=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SnapshotServiceTest {
+
+    // Just the repository; the application class would scan every component
+    @Configuration
+    @EntityScan(basePackageClasses = WorldSnapshot.class)
+    @EnableJpaRepositories(basePackageClasses = WorldSnapshotRepository.class)
+    static class Config {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private WorldSnapshotRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+    }
+
+    private SimulationWorld newWorld(long seed) {
+        SimulationSettings settings = new SimulationSettings();
+        settings.setCollisionsEnabled(true);
+        settings.setKeyframeInterval(60);
+        settings.setSeed(seed);
+        return new SimulationWorld(new PanelConfigService(), objectMapper, settings, null);
+    }
+
+    private SnapshotService snapshotService(SimulationWorld world, Map<String, SimulationWorld> rooms) {
+        PhysicsSimulationService physicsSimulationService = mock(PhysicsSimulationService.class);
+        when(physicsSimulationService.getWorld()).thenReturn(world);
+        RoomService roomService = mock(RoomService.class);
+        when(roomService.getWorlds()).thenReturn(rooms);
+        when(roomService.restoreRoom(anyString(), any(ByteBuffer.class))).thenAnswer(invocation -> {
+            SimulationWorld room = newWorld(1);
+            room.restoreCheckpoint(invocation.getArgument(1));
+            rooms.put(invocation.getArgument(0), room);
+            return room;
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SimulationMetrics metrics = mock(SimulationMetrics.class);
+        when(metrics.getSnapshotCaptureTimer()).thenReturn(registry.timer("capture"));
+        when(metrics.getSnapshotWriteTimer()).thenReturn(registry.timer("write"));
+
+        SnapshotService service = new SnapshotService();
+        ReflectionTestUtils.setField(service, "repository", repository);
+        ReflectionTestUtils.setField(service, "physicsSimulationService", physicsSimulationService);
+        ReflectionTestUtils.setField(service, "roomService", roomService);
+        ReflectionTestUtils.setField(service, "metrics", metrics);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        return service;
+    }
+
+    private static void step(SimulationWorld world, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            world.updateSimulation(Constants.DELTA_TIME);
+        }
+    }
+
+    @Test
+    void savedWorldsComeBackOnTheNextStart() throws Exception {
+        SimulationWorld world = newWorld(42);
+        world.initializeShapes(30, 30, 30);
+        step(world, 50);
+        SimulationWorld room = newWorld(43);
+        room.initializeShapes(5, 5, 5);
+        step(room, 20);
+        Map<String, SimulationWorld> rooms = new LinkedHashMap<>(Map.of("r1", room));
+
+        SnapshotService running = snapshotService(world, rooms);
+        running.init();
+        // First round inserts, the one at shutdown overwrites
+        ReflectionTestUtils.invokeMethod(running, "snapshot");
+        step(world, 10);
+        running.shutdown();
+        assertEquals(2, repository.count());
+        assertEquals(60, repository.findById("default").map(WorldSnapshot::getTick).orElseThrow());
+
+        SimulationWorld restoredWorld = newWorld(1);
+        Map<String, SimulationWorld> restoredRooms = new LinkedHashMap<>();
+        SnapshotService restarted = snapshotService(restoredWorld, restoredRooms);
+        restarted.init();
+        restarted.shutdown();
+
+        assertArrayEquals(world.captureCheckpoint(), restoredWorld.captureCheckpoint());
+        assertArrayEquals(room.captureCheckpoint(), restoredRooms.get("r1").captureCheckpoint());
+    }
+
+    @Test
+    void evictedRoomsAreDropped() throws Exception {
+        SimulationWorld world = newWorld(42);
+        Map<String, SimulationWorld> rooms = new LinkedHashMap<>(Map.of("r1", newWorld(43), "r2", newWorld(44)));
+        SnapshotService service = snapshotService(world, rooms);
+        service.init();
+        ReflectionTestUtils.invokeMethod(service, "snapshot");
+        assertEquals(3, repository.count());
+
+        rooms.remove("r1");
+        service.shutdown();
+
+        assertEquals(2, repository.count());
+        assertFalse(repository.existsById("rooms/r1"));
+    }
+}
@@ -2,6 +2,8 @@ import React, { useState, useEffect, useRef } from 'react';
 import SockJS from 'sockjs-client';
 import Controls from './components/Controls';
 import Status from './components/Status';
+import ShapeCanvas from './components/ShapeCanvas';
+import { WEBSOCKET_CONFIG, VIEWPORT_CONFIG } from './utils/constants';
 import './styles/PhysicsSimulation.css';
 
 // Use global Stomp from CDN
@@ -18,11 +20,139 @@ const PhysicsSimulation = () => {
   const [totalShapes, setTotalShapes] = useState(0);
   const [movingShapes, setMovingShapes] = useState(0);
   const [panelConfig, setPanelConfig] = useState({ width: 800, height: 600 });
+  // Set while only a viewport of the world is shown, see toggleViewport
+  const [viewport, setViewport] = useState(null);
+  const [density, setDensity] = useState(null);
 
   // Refs
-  const canvasRef = useRef(null);
-  const ctxRef = useRef(null);
   const stompClientRef = useRef(null);
+  const shapesSubscriptionRef = useRef(null);
+  const viewportSubscriptionRef = useRef(null);
+  const lastViewportSeqRef = useRef(-1);
+  const lastViewportSentRef = useRef(0);
+
+  // Delta protocol state, kept in refs so message handling doesn't re-render
+  const worldRef = useRef(new Map());
+  const lastSeqRef = useRef(null);
+  const pendingDeltasRef = useRef([]);
+  const resyncRequestedRef = useRef(false);
+
+  const showShapes = (list) => {
+    setShapes(list);
+    setMessageCount(prev => prev + 1);
+    setTotalShapes(list.length);
+    setMovingShapes(list.filter(s => s.isMoving || s.moving).length);
+  };
+
+  // Per-session frames: the shapes the viewport reaches, or density tiles when zoomed out
+  const onViewportFrame = (message) => {
+    const frame = JSON.parse(message.body);
+    if (frame.seq <= lastViewportSeqRef.current) return;
+    lastViewportSeqRef.current = frame.seq;
+    if (frame.type === 'density') {
+      setDensity(frame);
+      setShapes([]);
+      setMessageCount(prev => prev + 1);
+      setTotalShapes(frame.counts.reduce((sum, count) => sum + count, 0));
+      setMovingShapes(0);
+    } else {
+      setDensity(null);
+      showShapes(frame.shapes);
+    }
+  };
+
+  const mergeDelta = (world, delta) => {
+    // Shapes removed or added since the previous frame, then changes to the rest
+    (delta.removed || []).forEach(id => world.delete(id));
+    (delta.added || []).forEach(shape => world.set(shape.id, shape));
+    delta.changes.forEach(change => {
+      const shape = world.get(change.id);
+      if (shape) {
+        Object.assign(shape, change);
+      }
+    });
+  };
+
+  const applyKeyframe = (frame) => {
+    if (lastSeqRef.current !== null && frame.seq < lastSeqRef.current && !resyncRequestedRef.current) {
+      return;
+    }
+    const world = new Map();
+    frame.shapes.forEach(shape => world.set(shape.id, shape));
+    worldRef.current = world;
+    lastSeqRef.current = frame.seq;
+    resyncRequestedRef.current = false;
+
+    // Deltas that overtook the keyframe while resyncing still apply on top of it
+    const pending = pendingDeltasRef.current
+      .filter(delta => delta.seq > frame.seq)
+      .sort((a, b) => a.seq - b.seq);
+    pendingDeltasRef.current = [];
+    pending.forEach(delta => {
+      if (delta.seq === lastSeqRef.current + 1) {
+        mergeDelta(world, delta);
+        lastSeqRef.current = delta.seq;
+      }
+    });
+    showShapes(Array.from(world.values()));
+  };
+
+  const applyDelta = (delta) => {
+    if (resyncRequestedRef.current || lastSeqRef.current === null) {
+      pendingDeltasRef.current.push(delta);
+      if (pendingDeltasRef.current.length > 120) {
+        pendingDeltasRef.current.shift();
+      }
+      requestResync();
+      return;
+    }
+    if (delta.seq <= lastSeqRef.current) {
+      return;
+    }
+    if (delta.seq !== lastSeqRef.current + 1) {
+      // Missed a frame: ask for a keyframe and buffer until it arrives
+      pendingDeltasRef.current = [delta];
+      requestResync();
+      return;
+    }
+    mergeDelta(worldRef.current, delta);
+    lastSeqRef.current = delta.seq;
+    showShapes(Array.from(worldRef.current.values()));
+  };
+
+  const requestResync = () => {
+    if (resyncRequestedRef.current) return;
+    resyncRequestedRef.current = true;
+    if (stompClientRef.current && stompClientRef.current.connected) {
+      stompClientRef.current.send('/app/getShapes', {}, {});
+    }
+  };
+
+  // Subscribe to shape updates, and to full states sent to this session only on resync
+  const onShapes = function (message) {
+    const data = JSON.parse(message.body);
+
+    // Check if this is a panel config message
+    if (data.width && data.height && data.message && data.message.includes('Panel configured')) {
+      setPanelConfig({ width: data.width, height: data.height });
+      return;
+    }
+
+    // Whole-world frames are not shown while a viewport is
+    if (viewportSubscriptionRef.current) return;
+
+    if (Array.isArray(data)) {
+      showShapes(data);
+      return;
+    }
+
+    // Delta protocol: keyframes replace the world, deltas patch it in sequence order
+    if (data.type === 'keyframe') {
+      applyKeyframe(data);
+    } else if (data.type === 'delta') {
+      applyDelta(data);
+    }
+  };
 
   // WebSocket connection
   useEffect(() => {
@@ -34,23 +164,8 @@ const PhysicsSimulation = () => {
       console.log('Connected: ' + frame);
       setConnected(true);
       
-      // Subscribe to shape updates
-      stompClient.subscribe('/topic/shapes', function (message) {
-        const data = JSON.parse(message.body);
-        
-        // Check if this is a panel config message
-        if (data.width && data.height && data.message && data.message.includes('Panel configured')) {
-          setPanelConfig({ width: data.width, height: data.height });
-          return;
-        }
-        
-        if (Array.isArray(data)) {
-          setShapes(data);
-          setMessageCount(prev => prev + 1);
-          setTotalShapes(data.length);
-          setMovingShapes(data.filter(s => s.isMoving).length);
-        }
-      });
+      shapesSubscriptionRef.current = stompClient.subscribe('/topic/shapes', onShapes);
+      stompClient.subscribe('/user/queue/shapes', onShapes);
     }, function (error) {
       console.log('STOMP error: ' + error);
       setConnected(false);
@@ -63,115 +178,57 @@ const PhysicsSimulation = () => {
     };
   }, []);
 
-  // Initialize canvas and get panel config
+  // Get initial panel configuration
   useEffect(() => {
-    const canvas = canvasRef.current;
-    const ctx = canvas.getContext('2d');
-    ctxRef.current = ctx;
-    
-    // Get initial panel configuration
     if (stompClientRef.current && stompClientRef.current.connected) {
       stompClientRef.current.send('/app/getPanelConfig', {}, {});
     }
   }, [connected]);
 
-  // Update canvas size when panel config changes
-  useEffect(() => {
-    const canvas = canvasRef.current;
-    if (canvas && (canvas.width !== panelConfig.width || canvas.height !== panelConfig.height)) {
-      canvas.width = panelConfig.width;
-      canvas.height = panelConfig.height;
-    }
-  }, [panelConfig]);
-
-  // Animation loop
+  // Send the viewport as it changes, at most every SEND_INTERVAL ms; the last change of a
+  // burst is always sent
   useEffect(() => {
-    const draw = () => {
-      if (!ctxRef.current) return;
-
-      const ctx = ctxRef.current;
-      const canvas = canvasRef.current;
-      
-      // Clear canvas
-      ctx.clearRect(0, 0, canvas.width, canvas.height);
-      
-      // Draw background grid
-      drawGrid(ctx, canvas.width, canvas.height);
-      
-      // Draw all shapes
-      shapes.forEach(drawShape);
-      
-      requestAnimationFrame(draw);
+    if (!viewport || !stompClientRef.current || !stompClientRef.current.connected) return undefined;
+    const sendViewport = () => {
+      lastViewportSentRef.current = Date.now();
+      stompClientRef.current.send(WEBSOCKET_CONFIG.DESTINATIONS.VIEWPORT, {}, JSON.stringify(viewport));
     };
-
-    const animationId = requestAnimationFrame(draw);
-    return () => cancelAnimationFrame(animationId);
-  }, [shapes, panelConfig]);
-
-  // Helper functions
-  const drawGrid = (ctx, width, height) => {
-    ctx.strokeStyle = 'rgba(255, 255, 255, 0.1)';
-    ctx.lineWidth = 1;
-    
-    for (let x = 0; x < width; x += 50) {
-      ctx.beginPath();
-      ctx.moveTo(x, 0);
-      ctx.lineTo(x, height);
-      ctx.stroke();
-    }
-    
-    for (let y = 0; y < height; y += 50) {
-      ctx.beginPath();
-      ctx.moveTo(0, y);
-      ctx.lineTo(width, y);
-      ctx.stroke();
+    const wait = lastViewportSentRef.current + VIEWPORT_CONFIG.SEND_INTERVAL - Date.now();
+    if (wait <= 0) {
+      sendViewport();
+      return undefined;
     }
-  };
+    const timer = setTimeout(sendViewport, wait);
+    return () => clearTimeout(timer);
+  }, [viewport]);
 
-  const drawShape = (shape) => {
-    if (!ctxRef.current) return;
-    
-    const ctx = ctxRef.current;
-    ctx.save();
-    ctx.translate(shape.x, shape.y);
-    ctx.rotate(shape.angle);
-    
-    // Set color and opacity based on movement
-    const alpha = shape.isMoving ? 1.0 : 0.6;
-    ctx.fillStyle = shape.color + Math.floor(alpha * 255).toString(16).padStart(2, '0');
-    ctx.strokeStyle = shape.isMoving ? '#FFFFFF' : '#CCCCCC';
-    ctx.lineWidth = shape.isMoving ? 2 : 1;
-    
-    const halfSize = shape.size / 2;
-    
-    switch (shape.type) {
-      case 'circle':
-        ctx.beginPath();
-        ctx.arc(0, 0, halfSize, 0, 2 * Math.PI);
-        ctx.fill();
-        ctx.stroke();
-        break;
-        
-      case 'rectangle':
-        ctx.fillRect(-halfSize, -halfSize, shape.size, shape.size);
-        ctx.strokeRect(-halfSize, -halfSize, shape.size, shape.size);
-        break;
-        
-      case 'triangle':
-        ctx.beginPath();
-        ctx.moveTo(0, -halfSize);
-        ctx.lineTo(-halfSize, halfSize);
-        ctx.lineTo(halfSize, halfSize);
-        ctx.closePath();
-        ctx.fill();
-        ctx.stroke();
-        break;
-        
-      default:
-        console.warn('Unknown shape type:', shape.type);
+  // In viewport mode the whole-world topic is dropped, so the server only sends what the
+  // viewport shows. Leaving it resyncs from a fresh keyframe
+  const toggleViewport = (enabled) => {
+    const stompClient = stompClientRef.current;
+    if (!stompClient || !stompClient.connected) return;
+    if (enabled) {
+      if (shapesSubscriptionRef.current) {
+        shapesSubscriptionRef.current.unsubscribe();
+        shapesSubscriptionRef.current = null;
+      }
+      lastViewportSeqRef.current = -1;
+      viewportSubscriptionRef.current = stompClient.subscribe(WEBSOCKET_CONFIG.TOPICS.VIEWPORT_QUEUE, onViewportFrame);
+      setViewport({ x: 0, y: 0, width: panelConfig.width, height: panelConfig.height, zoom: 1 });
+    } else {
+      stompClient.send(WEBSOCKET_CONFIG.DESTINATIONS.CLEAR_VIEWPORT, {}, {});
+      if (viewportSubscriptionRef.current) {
+        viewportSubscriptionRef.current.unsubscribe();
+        viewportSubscriptionRef.current = null;
+      }
+      setViewport(null);
+      setDensity(null);
+      lastSeqRef.current = null;
+      pendingDeltasRef.current = [];
+      resyncRequestedRef.current = false;
+      shapesSubscriptionRef.current = stompClient.subscribe(WEBSOCKET_CONFIG.TOPICS.SHAPES, onShapes);
+      requestResync();
     }
-    
-    ctx.restore();
   };
 
   // WebSocket actions
@@ -229,17 +286,22 @@ const PhysicsSimulation = () => {
             onInitialize={initializeShapes}
             onReset={resetSimulation}
             onGetShapes={getShapes}
+            viewportMode={viewport !== null}
+            onToggleViewport={toggleViewport}
             connected={connected}
           />
         </div>
 
         {/* Canvas Panel */}
         <div className="canvas-panel">
-          <canvas 
-            ref={canvasRef}
+          <ShapeCanvas
             className="simulation-canvas"
+            shapes={shapes}
             width={panelConfig.width}
             height={panelConfig.height}
+            viewport={viewport}
+            density={density}
+            onViewportChange={setViewport}
           />
         </div>
 
@@ -13,6 +13,8 @@ const Controls = ({
   onInitialize,
   onReset,
   onGetShapes,
+  viewportMode,
+  onToggleViewport,
   connected
 }) => {
   console.log('Controls rendering - connected:', connected);
@@ -100,6 +102,23 @@ const Controls = ({
         </div>
       </div>
       
+      <div className="control-section">
+        <h3>🔍 View</h3>
+        <div className="control-group">
+          <label htmlFor="viewportMode">
+            <input
+              type="checkbox"
+              id="viewportMode"
+              checked={viewportMode}
+              onChange={(e) => onToggleViewport(e.target.checked)}
+              disabled={!connected}
+            />
+            {' '}Receive only what is in view
+          </label>
+          {viewportMode && <p className="control-hint">Scroll to zoom, drag to pan</p>}
+        </div>
+      </div>
+
       <div className="control-section">
         <h3>🎮 Actions</h3>
         <div className="control-group">
@@ -1,11 +1,27 @@
 import React, { useRef, useEffect } from 'react';
-import { CANVAS_CONFIG, SHAPE_CONFIG } from '../utils/constants';
+import { CANVAS_CONFIG, SHAPE_CONFIG, VIEWPORT_CONFIG } from '../utils/constants';
 import { validateShape } from '../utils/shapeUtils';
 import '../styles/ShapeCanvas.css';
 
-const ShapeCanvas = ({ shapes = [], width = CANVAS_CONFIG.DEFAULT_WIDTH, height = CANVAS_CONFIG.DEFAULT_HEIGHT }) => {
+const clampZoom = (zoom) => Math.max(VIEWPORT_CONFIG.MIN_ZOOM, Math.min(VIEWPORT_CONFIG.MAX_ZOOM, zoom));
+
+/**
+ * Draws shapes, or the density tiles of a zoomed-out viewport frame. Without a viewport the
+ * canvas shows the panel one to one; with one it shows that part of the world, and wheel and
+ * drag report the new viewport through onViewportChange.
+ */
+const ShapeCanvas = ({
+  shapes = [],
+  width = CANVAS_CONFIG.DEFAULT_WIDTH,
+  height = CANVAS_CONFIG.DEFAULT_HEIGHT,
+  viewport = null,
+  density = null,
+  onViewportChange,
+  className = 'shape-canvas'
+}) => {
   const canvasRef = useRef(null);
   const ctxRef = useRef(null);
+  const dragRef = useRef(null);
 
   useEffect(() => {
     const canvas = canvasRef.current;
@@ -17,47 +33,124 @@ const ShapeCanvas = ({ shapes = [], width = CANVAS_CONFIG.DEFAULT_WIDTH, height
     if (!ctxRef.current || !shapes) return;
 
     const ctx = ctxRef.current;
-    
+
     // Clear canvas
     ctx.clearRect(0, 0, width, height);
-    
+
+    // Everything below is drawn in world units
+    const zoom = viewport ? viewport.zoom : 1;
+    const left = viewport ? viewport.x : 0;
+    const top = viewport ? viewport.y : 0;
+    ctx.save();
+    ctx.scale(zoom, zoom);
+    ctx.translate(-left, -top);
+
     // Draw background grid
     ctx.strokeStyle = CANVAS_CONFIG.GRID_COLOR;
-    ctx.lineWidth = 1;
-    for (let x = 0; x < width; x += CANVAS_CONFIG.GRID_SIZE) {
+    ctx.lineWidth = 1 / zoom;
+    const right = left + width / zoom;
+    const bottom = top + height / zoom;
+    for (let x = Math.floor(left / CANVAS_CONFIG.GRID_SIZE) * CANVAS_CONFIG.GRID_SIZE; x < right; x += CANVAS_CONFIG.GRID_SIZE) {
       ctx.beginPath();
-      ctx.moveTo(x, 0);
-      ctx.lineTo(x, height);
+      ctx.moveTo(x, top);
+      ctx.lineTo(x, bottom);
       ctx.stroke();
     }
-    for (let y = 0; y < height; y += CANVAS_CONFIG.GRID_SIZE) {
+    for (let y = Math.floor(top / CANVAS_CONFIG.GRID_SIZE) * CANVAS_CONFIG.GRID_SIZE; y < bottom; y += CANVAS_CONFIG.GRID_SIZE) {
       ctx.beginPath();
-      ctx.moveTo(0, y);
-      ctx.lineTo(width, y);
+      ctx.moveTo(left, y);
+      ctx.lineTo(right, y);
       ctx.stroke();
     }
-    
-    // Draw all shapes
-    shapes.forEach(shape => {
-      if (validateShape(shape)) {
-        drawShape(ctx, shape);
-      }
+
+    if (density) {
+      drawDensity(ctx, density);
+    } else {
+      // Draw all shapes
+      shapes.forEach(shape => {
+        if (validateShape(shape)) {
+          drawShape(ctx, shape);
+        }
+      });
+    }
+    ctx.restore();
+  }, [shapes, width, height, viewport, density]);
+
+  // Zoom around the point under the cursor. Registered by hand: React wheel listeners are
+  // passive, so they could not keep the page from scrolling
+  useEffect(() => {
+    const canvas = canvasRef.current;
+    if (!viewport || !onViewportChange) return undefined;
+
+    const handleWheel = (event) => {
+      event.preventDefault();
+      const rect = canvas.getBoundingClientRect();
+      const px = (event.clientX - rect.left) * (width / rect.width);
+      const py = (event.clientY - rect.top) * (height / rect.height);
+      const zoom = clampZoom(viewport.zoom * (event.deltaY < 0 ? VIEWPORT_CONFIG.ZOOM_STEP : 1 / VIEWPORT_CONFIG.ZOOM_STEP));
+      onViewportChange({
+        x: viewport.x + px / viewport.zoom - px / zoom,
+        y: viewport.y + py / viewport.zoom - py / zoom,
+        width: width / zoom,
+        height: height / zoom,
+        zoom
+      });
+    };
+    canvas.addEventListener('wheel', handleWheel, { passive: false });
+    return () => canvas.removeEventListener('wheel', handleWheel);
+  }, [viewport, onViewportChange, width, height]);
+
+  const handleMouseDown = (event) => {
+    if (!viewport || !onViewportChange) return;
+    dragRef.current = { clientX: event.clientX, clientY: event.clientY, x: viewport.x, y: viewport.y };
+  };
+
+  const handleMouseMove = (event) => {
+    const drag = dragRef.current;
+    if (!drag || !viewport) return;
+    const rect = canvasRef.current.getBoundingClientRect();
+    const scale = (width / rect.width) / viewport.zoom;
+    onViewportChange({
+      ...viewport,
+      x: drag.x - (event.clientX - drag.clientX) * scale,
+      y: drag.y - (event.clientY - drag.clientY) * scale
     });
-  }, [shapes, width, height]);
+  };
+
+  const handleMouseUp = () => {
+    dragRef.current = null;
+  };
+
+  // Tiles shaded by their share of the fullest one
+  const drawDensity = (ctx, frame) => {
+    const max = Math.max(1, ...frame.counts);
+    for (let row = 0; row < frame.rows; row++) {
+      for (let column = 0; column < frame.columns; column++) {
+        const count = frame.counts[row * frame.columns + column];
+        if (count === 0) continue;
+        const x = frame.x + column * frame.tileSize;
+        const y = frame.y + row * frame.tileSize;
+        ctx.fillStyle = `rgba(${VIEWPORT_CONFIG.DENSITY_RGB}, ${(count / max) * VIEWPORT_CONFIG.DENSITY_MAX_ALPHA})`;
+        ctx.fillRect(x, y,
+          Math.min(frame.tileSize, frame.x + frame.width - x),
+          Math.min(frame.tileSize, frame.y + frame.height - y));
+      }
+    }
+  };
 
   const drawShape = (ctx, shape) => {
     ctx.save();
     ctx.translate(shape.x, shape.y);
     ctx.rotate(shape.angle);
-    
+
     // Set color and opacity based on movement
     const alpha = shape.isMoving ? SHAPE_CONFIG.MOVING_ALPHA : SHAPE_CONFIG.STATIC_ALPHA;
     ctx.fillStyle = shape.color + Math.floor(alpha * 255).toString(16).padStart(2, '0');
     ctx.strokeStyle = shape.isMoving ? SHAPE_CONFIG.MOVING_STROKE_COLOR : SHAPE_CONFIG.STATIC_STROKE_COLOR;
     ctx.lineWidth = shape.isMoving ? SHAPE_CONFIG.MOVING_LINE_WIDTH : SHAPE_CONFIG.STATIC_LINE_WIDTH;
-    
+
     const halfSize = shape.size / 2;
-    
+
     switch (shape.type) {
       case 'circle':
         ctx.beginPath();
@@ -65,12 +158,12 @@ const ShapeCanvas = ({ shapes = [], width = CANVAS_CONFIG.DEFAULT_WIDTH, height
         ctx.fill();
         ctx.stroke();
         break;
-        
+
       case 'rectangle':
         ctx.fillRect(-halfSize, -halfSize, shape.size, shape.size);
         ctx.strokeRect(-halfSize, -halfSize, shape.size, shape.size);
         break;
-        
+
       case 'triangle':
         ctx.beginPath();
         ctx.moveTo(0, -halfSize);
@@ -80,24 +173,28 @@ const ShapeCanvas = ({ shapes = [], width = CANVAS_CONFIG.DEFAULT_WIDTH, height
         ctx.fill();
         ctx.stroke();
         break;
-        
+
       default:
         console.warn('Unknown shape type:', shape.type);
     }
-    
+
     ctx.restore();
   };
 
   return (
     <div className="canvas-container">
-      <canvas 
+      <canvas
         ref={canvasRef}
-        className="shape-canvas"
-        width={width} 
+        className={className}
+        width={width}
         height={height}
+        onMouseDown={handleMouseDown}
+        onMouseMove={handleMouseMove}
+        onMouseUp={handleMouseUp}
+        onMouseLeave={handleMouseUp}
       />
     </div>
   );
 };
 
-export default ShapeCanvas; 
\ No newline at end of file
+export default ShapeCanvas;
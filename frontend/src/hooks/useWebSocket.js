@@ -1,6 +1,61 @@
 import { useState, useEffect, useCallback } from 'react';
 import SockJS from 'sockjs-client';
-import { WEBSOCKET_CONFIG } from '../utils/constants';
+import { WEBSOCKET_CONFIG, SHAPE_COLORS } from '../utils/constants';
+
+// Binary /topic/shapes frames, see BinaryFrameEncoder on the server
+export const BINARY_SHAPES_CONTENT_TYPE = 'application/vnd.simsoft.shapes';
+const BINARY_HEADER_BYTES = 16;
+const BINARY_SHAPE_TYPES = ['circle', 'rectangle', 'triangle'];
+const MOVING_FLAG = 0x80;
+const QUANT_MAX = 65535;
+
+/**
+ * Decodes one binary state frame into shape objects shaped like the JSON broadcast. Every
+ * 16-bit field is unsigned, the panel size included (whole units, up to 65535)
+ * @param {ArrayBuffer} buffer - Raw frame bytes
+ * @returns {{seq: number, width: number, height: number, shapes: Object[]}} - Decoded frame
+ */
+export const decodeShapeFrame = (buffer) => {
+  const view = new DataView(buffer);
+  const seq = view.getUint32(0);
+  const width = view.getUint16(4);
+  const height = view.getUint16(6);
+  const count = view.getUint32(8);
+  const recordBytes = view.getUint16(12);
+
+  const shapes = new Array(count);
+  let offset = BINARY_HEADER_BYTES;
+  for (let i = 0; i < count; i++, offset += recordBytes) {
+    const typeByte = view.getUint8(offset + 4);
+    const moving = (typeByte & MOVING_FLAG) !== 0;
+    shapes[i] = {
+      id: `shape_${view.getInt32(offset)}`,
+      type: BINARY_SHAPE_TYPES[typeByte & ~MOVING_FLAG],
+      color: SHAPE_COLORS[view.getUint8(offset + 5)],
+      x: (view.getUint16(offset + 6) / QUANT_MAX) * width,
+      y: (view.getUint16(offset + 8) / QUANT_MAX) * height,
+      angle: (view.getUint16(offset + 10) / QUANT_MAX) * 2 * Math.PI,
+      size: view.getUint16(offset + 12) / 256,
+      moving,
+      isMoving: moving
+    };
+  }
+  return { seq, width, height, shapes };
+};
+
+/**
+ * Decodes a base64 frame body, the form binary frames take over SockJS
+ * @param {string} body - Base64 text of the frame
+ * @returns {Object} - Decoded frame, see decodeShapeFrame
+ */
+export const decodeBase64ShapeFrame = (body) => {
+  const text = atob(body.trim());
+  const bytes = new Uint8Array(text.length);
+  for (let i = 0; i < text.length; i++) {
+    bytes[i] = text.charCodeAt(i);
+  }
+  return decodeShapeFrame(bytes.buffer);
+};
 
 export const useWebSocket = () => {
   const [socket, setSocket] = useState(null);
@@ -87,15 +142,20 @@ ${JSON.stringify(message)}\0`;
     }
   }, [socket, stompConnected]);
 
-  const subscribe = useCallback((topic, callback) => {
+  const subscribe = useCallback((topic, callback, options = {}) => {
     if (socket && stompConnected) {
       console.log('Setting up STOMP subscription for topic:', topic);
       
+      // Binary frames are opt-in; SockJS only carries text, so ask for base64
+      const contentTypeHeader = options.binary
+        ? `content-type:${BINARY_SHAPES_CONTENT_TYPE};encoding=base64\n`
+        : '';
+
       // Send STOMP SUBSCRIBE frame
       const subscribeFrame = `SUBSCRIBE
 id:sub-0
 destination:${topic}
-
+${contentTypeHeader}
 \0`;
       socket.send(subscribeFrame);
       
@@ -112,8 +172,13 @@ destination:${topic}
             // Extract the JSON payload from STOMP MESSAGE frame
             const bodyIndex = lines.findIndex(line => line === '');
             if (bodyIndex !== -1 && bodyIndex < lines.length - 1) {
-              const jsonData = lines.slice(bodyIndex + 1).join('\n');
-              const data = JSON.parse(jsonData);
+              const body = lines.slice(bodyIndex + 1).join('\n').replace(/\0$/, '');
+              const contentType = lines
+                .slice(1, bodyIndex)
+                .find(line => line.startsWith('content-type:'));
+              const data = contentType && contentType.includes(BINARY_SHAPES_CONTENT_TYPE)
+                ? decodeBase64ShapeFrame(body)
+                : JSON.parse(body);
               setMessageCount(prev => prev + 1);
               callback(data);
             }
@@ -37,6 +37,7 @@ export const WEBSOCKET_CONFIG = {
   ENDPOINT: getWebSocketEndpoint(),
   TOPICS: {
     SHAPES: '/topic/shapes',
+    VIEWPORT_QUEUE: '/user/queue/viewport',
     DEBUG: '/topic/debug'
   },
   DESTINATIONS: {
@@ -44,12 +45,25 @@ export const WEBSOCKET_CONFIG = {
     RESET: '/app/reset',
     GET_SHAPES: '/app/getShapes',
     GET_PANEL_CONFIG: '/app/getPanelConfig',
-    SET_PANEL_SIZE: '/app/setPanelSize'
+    SET_PANEL_SIZE: '/app/setPanelSize',
+    VIEWPORT: '/app/viewport',
+    CLEAR_VIEWPORT: '/app/clearViewport'
   },
   RECONNECT_DELAY: 5000,
   HEARTBEAT_INTERVAL: 10000
 };
 
+// Viewport mode: the server sends only what the viewport shows, and density tiles below
+// simulation.viewport.density-zoom (0.25 by default)
+export const VIEWPORT_CONFIG = {
+  MIN_ZOOM: 0.05,
+  MAX_ZOOM: 8,
+  ZOOM_STEP: 1.1,
+  SEND_INTERVAL: 100, // At most one /app/viewport per this many ms while panning
+  DENSITY_RGB: '78, 205, 196',
+  DENSITY_MAX_ALPHA: 0.8
+};
+
 // Default shape counts
 export const DEFAULT_SHAPE_COUNTS = {
   CIRCLES: 4,